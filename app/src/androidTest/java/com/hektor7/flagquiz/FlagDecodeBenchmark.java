@@ -0,0 +1,153 @@
+package com.hektor7.flagquiz;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * On-device benchmark of the flag decode paths, at several target sizes:
+ * the PNGs of the flag pack, and the vector flags rendered instead.
+ * Results go to logcat ("FlagQuiz Benchmark") and to
+ * flag-decode-benchmark.json in the app's external files directory:
+ * adb pull /sdcard/Android/data/com.hektor7.flagquiz/files/flag-decode-benchmark.json
+ */
+public class FlagDecodeBenchmark extends InstrumentationTestCase {
+    private static final String TAG = "FlagQuiz Benchmark";
+    private static final String RESULTS_FILE = "flag-decode-benchmark.json";
+    private static final int ROUNDS = 3; // passes over every flag
+
+    // target sizes: unknown (full size), tablet, phone, small phone
+    private static final int[][] TARGET_SIZES = {{0, 0}, {960, 640}, {480, 320}, {240, 160}};
+
+    private FlagCatalog catalog;
+    private FlagPack pack;
+    private FlagVectors vectors;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        AssetManager assets = context.getAssets();
+        this.catalog = FlagCatalogLoader.getInstance(assets);
+        this.pack = FlagPackLoader.getInstance(assets);
+        this.vectors = FlagVectorsLoader.getInstance(assets);
+    }
+
+    public void testDecodeBenchmark() throws IOException {
+        assertTrue(this.catalog.size() > 0);
+        assertEquals(this.catalog.size(), this.pack.size());
+        for (int flagId = 0; flagId < this.catalog.size(); flagId++)
+            assertTrue(this.pack.hasImage(flagId) || this.vectors.getFlag(flagId) != null);
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"unit\": \"us/flag\",\n  \"benchmarks\": [\n");
+
+        json.append(this.result("decode.legacyDrawable", this.benchmarkLegacy()));
+        for (int[] size : TARGET_SIZES) {
+            String name = "decode.flagDecoder." + size[0] + "x" + size[1];
+            json.append(",\n").append(this.result(name,
+                    this.benchmarkFlagDecoder(new FlagDecoder(size[0], size[1]), null)));
+        }
+        BitmapPool pool = new BitmapPool(8 * 1024 * 1024);
+        json.append(",\n").append(this.result("decode.flagDecoder.pooled.480x320",
+                this.benchmarkFlagDecoder(new FlagDecoder(480, 320, pool), pool)));
+        Log.i(TAG, pool.getStatistics());
+        for (int[] size : TARGET_SIZES) {
+            String name = "render.flagRenderer." + size[0] + "x" + size[1];
+            json.append(",\n").append(this.result(name,
+                    this.benchmarkFlagRenderer(new FlagRenderer(null), size[0], size[1])));
+        }
+        json.append("\n  ]\n}\n");
+
+        File dir = getInstrumentation().getTargetContext().getExternalFilesDir(null);
+        Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(dir, RESULTS_FILE)), "UTF-8");
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    // Drawable.createFromStream, as QuizFragment.setupImageGuess used to do
+    private double benchmarkLegacy() throws IOException {
+        long start = System.nanoTime();
+        int flags = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int flagId = 0; flagId < this.catalog.size(); flagId++) {
+                if (!this.pack.hasImage(flagId))
+                    continue;
+                ++flags;
+                InputStream stream = this.pack.openFlag(flagId);
+                try {
+                    Drawable flag = Drawable.createFromStream(stream, null);
+                    assertNotNull(flag);
+                } finally {
+                    stream.close();
+                }
+            }
+        }
+        return this.microsPerFlag(System.nanoTime() - start, flags);
+    }
+
+    // each flag goes back to the pool, if any, as when the next one is shown
+    private double benchmarkFlagDecoder(FlagDecoder decoder, BitmapPool pool)
+            throws IOException {
+        long start = System.nanoTime();
+        int flags = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int flagId = 0; flagId < this.catalog.size(); flagId++) {
+                if (!this.pack.hasImage(flagId))
+                    continue;
+                ++flags;
+                InputStream stream = this.pack.openFlag(flagId);
+                try {
+                    Bitmap flag = decoder.decode(stream);
+                    assertNotNull(flag);
+                    if (pool != null) {
+                        pool.put(flag);
+                    }
+                } finally {
+                    stream.close();
+                }
+            }
+        }
+        return this.microsPerFlag(System.nanoTime() - start, flags);
+    }
+
+    // vector flags, with a new bitmap each, at the exact target size
+    private double benchmarkFlagRenderer(FlagRenderer renderer, int width, int height) {
+        long start = System.nanoTime();
+        int flags = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int flagId = 0; flagId < this.catalog.size(); flagId++) {
+                FlagVectors.VectorFlag vector = this.vectors.getFlag(flagId);
+                if (vector == null)
+                    continue;
+                ++flags;
+                assertNotNull(renderer.render(vector, width, height));
+            }
+        }
+        return this.microsPerFlag(System.nanoTime() - start, flags);
+    }
+
+    private double microsPerFlag(long nanos, int flags) {
+        return flags == 0 ? 0 : nanos / 1000.0 / flags;
+    }
+
+    private String result(String name, double microsPerFlag) {
+        Log.i(TAG, String.format(Locale.US, "%s: %.1f us/flag", name, microsPerFlag));
+        return String.format(Locale.US, "    {\"name\": \"%s\", \"mean\": %.1f}",
+                name, microsPerFlag);
+    }
+}
@@ -0,0 +1,79 @@
+package com.hektor7.flagquiz;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.test.InstrumentationTestCase;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes of FlagLoader against the flags of the app's assets.
+ */
+public class FlagLoaderTest extends InstrumentationTestCase {
+    private Context context;
+    private FlagCatalog catalog;
+    private FlagPack pack;
+    private FlagVectors vectors;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.context = getInstrumentation().getTargetContext();
+        AssetManager assets = this.context.getAssets();
+        this.catalog = FlagCatalogLoader.getInstance(assets);
+        this.pack = FlagPackLoader.getInstance(assets);
+        this.vectors = FlagVectorsLoader.getInstance(assets);
+    }
+
+    // a prefetch queued at one size and run after the size changed is
+    // decoded and cached at the size it was queued at
+    public void testDecodeSizeTakenWhenQueued() throws Exception {
+        final int flagId = 0;
+        FlagDecoder decoder = new FlagDecoder(480, 320);
+        FlagCache cache = new FlagCache(this.context, new BitmapPool(8 * 1024 * 1024));
+
+        // holds the decodes back until the size changed
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch queued = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queued.await();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        FlagLoader loader = new FlagLoader(this.pack, this.vectors, this.catalog,
+                cache, decoder, executor);
+
+        FlagDecoder.DecodeSize queuedSize = decoder.getDecodeSize();
+        loader.prefetch(new int[]{flagId}, 0, 1);
+        decoder.setTargetSize(240, 160);
+        queued.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        String assetPath = this.catalog.getAssetPath(flagId);
+        Bitmap cached = cache.getAndRetain(FlagCache.getKey(assetPath, queuedSize));
+        assertNotNull(cached);
+        Bitmap expected = this.decode(decoder, flagId, queuedSize);
+        assertEquals(expected.getWidth(), cached.getWidth());
+        assertEquals(expected.getHeight(), cached.getHeight());
+        assertNull(cache.getAndRetain(FlagCache.getKey(assetPath, decoder.getDecodeSize())));
+    }
+
+    private Bitmap decode(FlagDecoder decoder, int flagId, FlagDecoder.DecodeSize size)
+            throws IOException {
+        FlagVectors.VectorFlag vector = this.vectors.getFlag(flagId);
+        if (vector != null)
+            return decoder.decode(vector, size);
+        return decoder.decode(this.pack.openFlag(flagId), size);
+    }
+}
@@ -0,0 +1,79 @@
+package com.hektor7.flagquiz;
+
+import android.test.InstrumentationTestCase;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries of QuizHistory, against an in-memory database.
+ */
+public class QuizHistoryTest extends InstrumentationTestCase {
+    private QuizHistory history;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.history = new QuizHistory(getInstrumentation().getTargetContext(), null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.history.close();
+        super.tearDown();
+    }
+
+    public void testFlagStatistics() throws InterruptedException {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                history.record(1, "Europe-Spain", "Europe-Spain", true, 1000);
+                history.record(1, "Europe-Bosnia", "Europe-Serbia", false, 4000);
+                history.record(1, "Europe-Bosnia", "Europe-Bosnia", true, 2000);
+                history.record(2, "Europe-Spain", "Europe-Spain", true, 3000);
+            }
+        });
+
+        List<QuizHistory.FlagStatistics> statistics = this.queryFlagStatistics();
+        assertEquals(2, statistics.size());
+        // worst accuracy first
+        QuizHistory.FlagStatistics bosnia = statistics.get(0);
+        assertEquals("Europe-Bosnia", bosnia.flag);
+        assertEquals(2, bosnia.guesses);
+        assertEquals(1, bosnia.correctGuesses);
+        assertEquals(3000, Math.round(bosnia.averageLatency));
+        QuizHistory.FlagStatistics spain = statistics.get(1);
+        assertEquals("Europe-Spain", spain.flag);
+        assertEquals(2, spain.guesses);
+        assertEquals(2, spain.correctGuesses);
+        assertEquals(2000, Math.round(spain.averageLatency));
+    }
+
+    public void testNoGuesses() throws InterruptedException {
+        assertTrue(this.queryFlagStatistics().isEmpty());
+    }
+
+    // queries on the main thread, as the quiz does, and waits for the answer
+    private List<QuizHistory.FlagStatistics> queryFlagStatistics()
+            throws InterruptedException {
+        final CountDownLatch answered = new CountDownLatch(1);
+        final Object[] result = new Object[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                history.queryFlagStatistics(new QuizHistory.Callback() {
+                    @Override
+                    public void onFlagStatistics(List<QuizHistory.FlagStatistics> statistics) {
+                        result[0] = statistics;
+                        answered.countDown();
+                    }
+                });
+            }
+        });
+        assertTrue(answered.await(10, TimeUnit.SECONDS));
+        @SuppressWarnings("unchecked")
+        List<QuizHistory.FlagStatistics> statistics = (List<QuizHistory.FlagStatistics>) result[0];
+        return statistics;
+    }
+}
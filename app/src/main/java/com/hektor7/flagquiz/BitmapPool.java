@@ -0,0 +1,171 @@
+// BitmapPool.java
+// Flag bitmaps no longer shown or cached, reused by later decodes
+package com.hektor7.flagquiz;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps released flag bitmaps so that FlagDecoder can decode into
+ * them through BitmapFactory.Options.inBitmap instead of allocating a
+ * new one per question. From API 19 a bitmap can be reused for any
+ * flag that fits in its allocation; before, only for a flag of the
+ * same size and config decoded without subsampling. Its hit, miss and
+ * allocation counters are printed by getStatistics, in the dumpsys
+ * output of MemoryGovernor.
+ */
+public class BitmapPool {
+    private int maxBytes; // bytes kept at most
+    private final List<Bitmap> bitmaps; // oldest first
+    private int bytes; // bytes kept
+    private int hits; // decodes into a pooled bitmap
+    private int misses; // decodes into a new bitmap
+    private long bytesAllocated; // bytes of the new bitmaps
+    private long bytesReused; // bytes of the flags decoded into pooled bitmaps
+
+    /**
+     * @param maxBytes Bytes kept at most, the oldest bitmaps are dropped
+     */
+    public BitmapPool(int maxBytes) {
+        this.maxBytes = maxBytes;
+        this.bitmaps = new ArrayList<Bitmap>();
+    }
+
+    /**
+     * Take a bitmap a flag can be decoded into.
+     *
+     * @param width        Width of the decoded flag
+     * @param height       Height of the decoded flag
+     * @param config       Config of the decoded flag
+     * @param inSampleSize Subsample factor of the decode
+     * @return Bitmap removed from the pool, or null if none fits
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config,
+                                   int inSampleSize) {
+        int best = -1;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // smallest allocation the flag fits in
+            int needed = width * height * getBytesPerPixel(config);
+            for (int i = 0; i < this.bitmaps.size(); i++) {
+                int size = getAllocationBytes(this.bitmaps.get(i));
+                if (size >= needed && (best < 0
+                        || size < getAllocationBytes(this.bitmaps.get(best))))
+                    best = i;
+            }
+        } else if (inSampleSize == 1) {
+            for (int i = 0; i < this.bitmaps.size() && best < 0; i++) {
+                Bitmap bitmap = this.bitmaps.get(i);
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                        && bitmap.getConfig() == config)
+                    best = i;
+            }
+        }
+        if (best < 0)
+            return null;
+
+        Bitmap bitmap = this.bitmaps.remove(best);
+        this.bytes -= getAllocationBytes(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Keep a bitmap for reuse. The caller must not use it any more.
+     *
+     * @param bitmap Flag no longer shown or cached
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()
+                || this.bitmaps.contains(bitmap))
+            return;
+
+        this.bitmaps.add(bitmap);
+        this.bytes += getAllocationBytes(bitmap);
+        while (this.bytes > this.maxBytes)
+            this.bytes -= getAllocationBytes(this.bitmaps.remove(0));
+    }
+
+    /**
+     * Change the bytes kept at most, dropping the oldest bitmaps over it.
+     *
+     * @param maxBytes Bytes kept at most
+     */
+    public synchronized void setMaxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+        while (this.bytes > this.maxBytes)
+            this.bytes -= getAllocationBytes(this.bitmaps.remove(0));
+    }
+
+    /**
+     * @return Bytes kept at most
+     */
+    public synchronized int getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * @return Bytes kept
+     */
+    public synchronized int getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Drop every pooled bitmap, e.g. when memory runs low.
+     */
+    public synchronized void clear() {
+        this.bitmaps.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * Count a flag decoded into a pooled bitmap.
+     *
+     * @param bitmap Decoded flag
+     */
+    public synchronized void recordHit(Bitmap bitmap) {
+        ++this.hits;
+        this.bytesReused += bitmap.getByteCount();
+    }
+
+    /**
+     * Count a flag decoded into a new bitmap.
+     *
+     * @param bitmap Decoded flag
+     */
+    public synchronized void recordMiss(Bitmap bitmap) {
+        ++this.misses;
+        this.bytesAllocated += getAllocationBytes(bitmap);
+    }
+
+    /**
+     * Describe the pool usage and its counters.
+     *
+     * @return e.g. "BitmapPool[564000/1048576 bytes, hits=8, misses=4, allocated=1128000, reused=2256000]"
+     */
+    public synchronized String getStatistics() {
+        return "BitmapPool[" + this.bytes + "/" + this.maxBytes + " bytes"
+                + ", hits=" + this.hits
+                + ", misses=" + this.misses
+                + ", allocated=" + this.bytesAllocated
+                + ", reused=" + this.bytesReused + "]";
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int getAllocationBytes(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+            return bitmap.getAllocationByteCount();
+        return bitmap.getByteCount();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ARGB_8888)
+            return 4;
+        if (config == Bitmap.Config.ALPHA_8)
+            return 1;
+        return 2; // RGB_565 and ARGB_4444
+    }
+}
@@ -0,0 +1,69 @@
+// CountryNamesLoader.java
+// Loads the country names of each locale from the resources once
+package com.hektor7.flagquiz;
+
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Country names come from the country_names resource array, translated
+ * per language and keyed by flag file name through country_keys. Each
+ * locale's table is built the first time it is used and kept, so
+ * switching back and forth between languages reads no resources and
+ * no assets. Flags without a translation keep their catalog name.
+ */
+public final class CountryNamesLoader {
+    // String used when logging error messages
+    private static final String TAG = "FlagQuiz Names";
+
+    // tables of the locales used so far; the catalog is one per process
+    private static final Map<Locale, CountryNameTable> tables =
+            new HashMap<Locale, CountryNameTable>();
+
+    private CountryNamesLoader() {
+    }
+
+    /**
+     * Return the country names in the resources' locale, building them
+     * the first time.
+     *
+     * @param resources Resources of the current configuration
+     * @param catalog   Flag catalog
+     * @return Country name table
+     */
+    public static synchronized CountryNameTable getInstance(Resources resources,
+                                                            FlagCatalog catalog) {
+        Locale locale = resources.getConfiguration().locale;
+        CountryNameTable table = tables.get(locale);
+        if (table == null || table.size() != catalog.size()) {
+            table = load(resources, catalog);
+            tables.put(locale, table);
+        }
+        return table;
+    }
+
+    private static CountryNameTable load(Resources resources, FlagCatalog catalog) {
+        String[] keys = resources.getStringArray(R.array.country_keys);
+        String[] translations = resources.getStringArray(R.array.country_names);
+        if (keys.length != translations.length) {
+            Log.w(TAG, keys.length + " country keys but "
+                    + translations.length + " names");
+        }
+
+        Map<String, String> namesByKey = new HashMap<String, String>();
+        for (int i = 0; i < Math.min(keys.length, translations.length); i++)
+            namesByKey.put(keys[i], translations[i]);
+
+        String[] names = new String[catalog.size()];
+        for (int flagId = 0; flagId < names.length; flagId++) {
+            String name = namesByKey.get(catalog.getFileName(flagId));
+            names[flagId] = name != null ? name : catalog.getName(flagId);
+        }
+        return new CountryNameTable(names,
+                resources.getString(R.string.correct_answer));
+    }
+}
@@ -0,0 +1,190 @@
+// FlagCache.java
+// Size-bounded in-memory cache of decoded flags, keyed by asset path and size
+package com.hektor7.flagquiz;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decoded flags, plus the flags handed out by FlagLoader. Keys hold
+ * the size a flag was decoded at, so a flag decoded before the view
+ * was resized or the memory tier changed is never returned, only
+ * evicted in turn. A flag handed out is retained until released, e.g.
+ * when flagImageView shows the next one. Flags that are neither
+ * cached nor retained go to the bitmap pool, to be decoded into again.
+ */
+public class FlagCache extends LruCache<String, Bitmap> {
+    // String used when logging cache statistics
+    private static final String TAG = "FlagQuiz Cache";
+
+    // fraction of the app's memory class given to the cache
+    private static final int MEMORY_CLASS_DIVIDER = 8;
+
+    private final BitmapPool bitmapPool; // receives flags no longer used
+    private final Map<Bitmap, Integer> retainCounts; // flags handed out
+    private final Set<Bitmap> evictedRetained; // handed out, no longer cached
+    private boolean clearing; // in clear(), evicted flags are dropped
+    private int budgetBytes; // bytes held at most, up to maxSize()
+
+    /**
+     * Create a cache sized from the device's memory class.
+     *
+     * @param context    Context used to read the memory class
+     * @param bitmapPool Receives the flags no longer cached nor retained
+     */
+    public FlagCache(Context context, BitmapPool bitmapPool) {
+        super(computeMaxBytes(context));
+        this.budgetBytes = this.maxSize();
+        this.bitmapPool = bitmapPool;
+        this.retainCounts = new HashMap<Bitmap, Integer>();
+        this.evictedRetained = new HashSet<Bitmap>();
+    }
+
+    /**
+     * Compute the cache size in bytes for this device.
+     *
+     * @param context Context used to read the memory class
+     * @return Maximum bytes held by the cache
+     */
+    public static int computeMaxBytes(Context context) {
+        ActivityManager activityManager = (ActivityManager)
+                context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = activityManager.getMemoryClass(); // in megabytes
+        return memoryClass * 1024 * 1024 / MEMORY_CLASS_DIVIDER;
+    }
+
+    // entries are weighed by their pixel bytes
+    @Override
+    protected int sizeOf(String key, Bitmap flag) {
+        return flag.getByteCount();
+    }
+
+    // evicted flags are reused unless they are still handed out
+    @Override
+    protected synchronized void entryRemoved(boolean evicted, String key,
+                                             Bitmap oldFlag, Bitmap newFlag) {
+        if (oldFlag == newFlag) {
+            return;
+        }
+        if (this.retainCounts.containsKey(oldFlag)) {
+            this.evictedRetained.add(oldFlag);
+        } else if (!this.clearing) {
+            this.bitmapPool.put(oldFlag);
+        }
+    }
+
+    /**
+     * @param assetPath Path of the flag
+     * @param size      Size the flag is decoded at
+     * @return Key of the flag decoded at that size
+     */
+    public static String getKey(String assetPath, FlagDecoder.DecodeSize size) {
+        return assetPath + '@' + size;
+    }
+
+    /**
+     * Return a cached flag and retain it.
+     *
+     * @param key Key of the flag, from getKey
+     * @return Retained flag, or null if it isn't cached
+     */
+    public synchronized Bitmap getAndRetain(String key) {
+        Bitmap flag = this.get(key);
+        if (flag != null) {
+            this.retain(flag);
+        }
+        return flag;
+    }
+
+    /**
+     * Cache a flag just decoded and retain it.
+     *
+     * @param key  Key of the flag, from getKey
+     * @param flag Decoded flag
+     */
+    public synchronized void putAndRetain(String key, Bitmap flag) {
+        this.retain(flag); // before it can be evicted
+        this.put(key, flag);
+        if (this.size() > this.budgetBytes) {
+            this.trimToSize(this.budgetBytes);
+        }
+    }
+
+    /**
+     * Hold fewer bytes than the size the cache was created with, or
+     * up to it again, evicting the least recently used flags over it.
+     * LruCache.resize needs API 21, so the budget is enforced on put.
+     *
+     * @param budgetBytes Bytes held at most, clamped to maxSize()
+     */
+    public synchronized void setBudget(int budgetBytes) {
+        this.budgetBytes = Math.min(budgetBytes, this.maxSize());
+        this.trimToSize(this.budgetBytes);
+    }
+
+    /**
+     * @return Bytes held at most
+     */
+    public synchronized int getBudget() {
+        return this.budgetBytes;
+    }
+
+    /**
+     * Release a flag handed out by getAndRetain or putAndRetain.
+     * It must not be used afterwards.
+     *
+     * @param flag Flag, ignored if null
+     */
+    public synchronized void release(Bitmap flag) {
+        Integer count = this.retainCounts.get(flag);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            this.retainCounts.put(flag, count - 1);
+        } else {
+            this.retainCounts.remove(flag);
+            if (this.evictedRetained.remove(flag)) {
+                this.bitmapPool.put(flag);
+            }
+        }
+    }
+
+    private void retain(Bitmap flag) {
+        Integer count = this.retainCounts.get(flag);
+        this.retainCounts.put(flag, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Drop every cached and pooled flag to free memory, and log the
+     * cache and pool statistics. Retained flags are pooled on release.
+     */
+    public synchronized void clear() {
+        Log.i(TAG, this.getStatistics());
+        Log.i(TAG, this.bitmapPool.getStatistics());
+        this.clearing = true;
+        this.evictAll();
+        this.clearing = false;
+        this.bitmapPool.clear();
+    }
+
+    /**
+     * Describe the cache usage and its hit/miss/eviction counters.
+     *
+     * @return e.g. "FlagCache[1843200/4194304 bytes, hits=12, misses=10, evictions=0]"
+     */
+    public synchronized String getStatistics() {
+        return "FlagCache[" + this.size() + "/" + this.budgetBytes + " bytes"
+                + ", hits=" + this.hitCount()
+                + ", misses=" + this.missCount()
+                + ", evictions=" + this.evictionCount() + "]";
+    }
+}
@@ -0,0 +1,66 @@
+// FlagCatalogLoader.java
+// Loads the flag catalog from the assets once per process
+package com.hektor7.flagquiz;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class FlagCatalogLoader {
+    // String used when logging error messages
+    private static final String TAG = "FlagQuiz Catalog";
+
+    private static FlagCatalog instance; // loaded once per process
+
+    private FlagCatalogLoader() {
+    }
+
+    /**
+     * Return the catalog, loading it from the assets the first time.
+     *
+     * @param assets Assets holding the catalog
+     * @return Flag catalog, empty if it couldn't be read
+     */
+    public static synchronized FlagCatalog getInstance(AssetManager assets) {
+        if (instance == null) {
+            instance = load(assets);
+        }
+        return instance;
+    }
+
+    /**
+     * Start loading the catalog on a background thread, so that
+     * getInstance() finds it ready or waits only for the rest of it.
+     *
+     * @param assets Assets holding the catalog
+     */
+    public static void preload(final AssetManager assets) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                getInstance(assets);
+            }
+        }, "FlagCatalog preload").start();
+    }
+
+    private static FlagCatalog load(AssetManager assets) {
+        InputStream stream = null;
+        try {
+            stream = assets.open(FlagCatalog.CATALOG_FILE);
+            return FlagCatalog.read(stream);
+        } catch (IOException exception) {
+            Log.e(TAG, "Error loading the flag catalog", exception);
+            return FlagCatalog.empty();
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                    // nothing else to do
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+// FlagDecoder.java
+// Decodes flag PNGs subsampled, and renders vector flags, to the size they are displayed at
+package com.hektor7.flagquiz;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class FlagDecoder {
+    // signature + IHDR length/type + width, height, bit depth and color type
+    private static final int PNG_HEADER_LENGTH = 26;
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int PNG_IHDR = 0x49484452; // "IHDR"
+    private static final int PNG_COLOR_TYPE_RGB = 2;
+
+    private final BitmapPool bitmapPool; // bitmaps to decode into, may be null
+    private final FlagRenderer renderer; // draws vector flags, guarded by itself
+    private int targetWidth; // size the flag is displayed at, in pixels
+    private int targetHeight;
+    private int downscale = 1; // divides the target size, set by MemoryGovernor
+
+    /**
+     * Create a decoder for flags displayed at most at the given size.
+     *
+     * @param targetWidth  Width in pixels
+     * @param targetHeight Height in pixels
+     */
+    public FlagDecoder(int targetWidth, int targetHeight) {
+        this(targetWidth, targetHeight, null);
+    }
+
+    /**
+     * Create a decoder that reuses pooled bitmaps when one fits.
+     *
+     * @param targetWidth  Width in pixels
+     * @param targetHeight Height in pixels
+     * @param bitmapPool   Bitmaps to decode into, null to always allocate
+     */
+    public FlagDecoder(int targetWidth, int targetHeight, BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+        this.renderer = new FlagRenderer(bitmapPool);
+        this.setTargetSize(targetWidth, targetHeight);
+    }
+
+    /**
+     * Change the size flags are displayed at, e.g. once the view is measured.
+     *
+     * @param targetWidth  Width in pixels
+     * @param targetHeight Height in pixels
+     */
+    public synchronized void setTargetSize(int targetWidth, int targetHeight) {
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+    }
+
+    /**
+     * Decode and render flags below the size they are displayed at,
+     * to save memory; they are scaled up when shown.
+     *
+     * @param downscale 1 for full resolution, 2 for half, ...
+     */
+    public synchronized void setDownscale(int downscale) {
+        this.downscale = downscale;
+    }
+
+    /**
+     * @return Size flags are decoded at now, to pass to decode and to
+     *         key the decoded flags by
+     */
+    public synchronized DecodeSize getDecodeSize() {
+        return new DecodeSize(this.targetWidth / this.downscale,
+                this.targetHeight / this.downscale);
+    }
+
+    /**
+     * Decode a flag. The stream must support mark/reset back to its
+     * start after any number of bytes, as asset and flag pack streams do.
+     *
+     * @param stream Stream positioned at the start of the PNG
+     * @return Decoded flag or null if the stream isn't a valid image
+     * @throws IOException If the stream can't be read
+     */
+    public Bitmap decode(InputStream stream) throws IOException {
+        return this.decode(stream, this.getDecodeSize());
+    }
+
+    /**
+     * Decode a flag at a size taken earlier, e.g. when its decode was
+     * queued, whatever the size is now.
+     *
+     * @param stream Stream positioned at the start of the PNG
+     * @param size   Size from getDecodeSize
+     * @return Decoded flag or null if the stream isn't a valid image
+     * @throws IOException If the stream can't be read
+     */
+    public Bitmap decode(InputStream stream, DecodeSize size) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true; // only mutable bitmaps can be reused
+
+        // read the bounds and color type from the PNG header
+        stream.mark(PNG_HEADER_LENGTH);
+        DataInputStream header = new DataInputStream(stream);
+        if (header.readLong() == PNG_SIGNATURE && header.readInt() > 0
+                && header.readInt() == PNG_IHDR) {
+            int width = header.readInt();
+            int height = header.readInt();
+            header.readByte(); // bit depth
+            int colorType = header.readByte();
+
+            options.inSampleSize = calculateInSampleSize(width, height,
+                    size.width, size.height);
+            // flags without alpha only need half the bytes per pixel
+            options.inPreferredConfig = colorType == PNG_COLOR_TYPE_RGB
+                    ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+
+            if (this.bitmapPool != null) {
+                options.inBitmap = this.bitmapPool.get(
+                        width / options.inSampleSize, height / options.inSampleSize,
+                        options.inPreferredConfig, options.inSampleSize);
+            }
+        }
+        stream.reset();
+
+        if (options.inBitmap != null) {
+            try {
+                Bitmap flag = BitmapFactory.decodeStream(stream, null, options);
+                if (flag != null) {
+                    this.bitmapPool.recordHit(flag);
+                    return flag;
+                }
+            } catch (IllegalArgumentException exception) {
+                // the pooled bitmap can't hold this flag after all
+                this.bitmapPool.put(options.inBitmap);
+            }
+            options.inBitmap = null;
+            stream.reset();
+        }
+
+        Bitmap flag = BitmapFactory.decodeStream(stream, null, options);
+        if (flag != null && this.bitmapPool != null) {
+            this.bitmapPool.recordMiss(flag);
+        }
+        return flag;
+    }
+
+    /**
+     * Render a vector flag at the target size. Unlike a PNG, it is
+     * drawn at the exact size, however large the screen.
+     *
+     * @param flag Vector flag
+     * @return Rendered flag
+     */
+    public Bitmap decode(FlagVectors.VectorFlag flag) {
+        return this.decode(flag, this.getDecodeSize());
+    }
+
+    /**
+     * Render a vector flag at a size taken earlier.
+     *
+     * @param flag Vector flag
+     * @param size Size from getDecodeSize
+     * @return Rendered flag
+     */
+    public Bitmap decode(FlagVectors.VectorFlag flag, DecodeSize size) {
+        // not under this, which the main thread takes to change the size
+        synchronized (this.renderer) {
+            return this.renderer.render(flag, size.width, size.height);
+        }
+    }
+
+    /**
+     * Calculate the largest power of two subsample factor that still
+     * leaves enough pixels to fill the target with fitCenter scaling.
+     *
+     * @param width        Image width
+     * @param height       Image height
+     * @param targetWidth  Target width, 0 if unknown
+     * @param targetHeight Target height, 0 if unknown
+     * @return Subsample factor
+     */
+    public static int calculateInSampleSize(int width, int height,
+                                            int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0)
+            return inSampleSize;
+
+        // fitCenter scales the flag until one side fills the view
+        while (width / (inSampleSize * 2) >= targetWidth
+                || height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Size a flag is decoded at: the target size over the downscale,
+     * as it was when taken. Immutable.
+     */
+    public static final class DecodeSize {
+        public final int width; // in pixels, 0 if unknown
+        public final int height;
+
+        DecodeSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * @return e.g. "480x320"
+         */
+        @Override
+        public String toString() {
+            return this.width + "x" + this.height;
+        }
+    }
+}
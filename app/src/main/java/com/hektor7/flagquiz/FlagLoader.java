@@ -0,0 +1,218 @@
+// FlagLoader.java
+// Decodes flag images on a background thread and prefetches upcoming flags
+package com.hektor7.flagquiz;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class FlagLoader {
+    // String used when logging error messages
+    private static final String TAG = "FlagQuiz Loader";
+
+    // number of upcoming flags decoded ahead of the current one, by default
+    public static final int PREFETCH_DEPTH = 3;
+
+    /**
+     * Receives a decoded flag on the main thread.
+     */
+    public interface Callback {
+        /**
+         * Called when the flag is ready. The flag is retained in the
+         * cache; the callback must release it once it isn't shown.
+         *
+         * @param flagId Flag id
+         * @param flag   Decoded flag, or null if it could not be loaded
+         */
+        void onFlagLoaded(int flagId, Bitmap flag);
+    }
+
+    private final FlagPack pack; // source of the flag images
+    private final FlagVectors vectors; // flags rendered instead of decoded
+    private final FlagCatalog catalog; // asset path of each flag
+    private final FlagCache cache; // flags decoded by this or earlier quizzes
+    private final FlagDecoder decoder; // decodes flags at their displayed size
+    private final ExecutorService executor; // decodes flags off the main thread
+    private final Handler handler; // delivers decoded flags to the main thread
+    private final Map<Integer, DecodeTask> tasks; // queued or decoded flags
+    private int prefetchDepth = PREFETCH_DEPTH; // set by MemoryGovernor
+
+    public FlagLoader(FlagPack pack, FlagVectors vectors, FlagCatalog catalog,
+                      FlagCache cache, FlagDecoder decoder) {
+        this(pack, vectors, catalog, cache, decoder, Executors.newSingleThreadExecutor());
+    }
+
+    // the executor is given by tests, to hold the decodes back
+    FlagLoader(FlagPack pack, FlagVectors vectors, FlagCatalog catalog,
+               FlagCache cache, FlagDecoder decoder, ExecutorService executor) {
+        this.pack = pack;
+        this.vectors = vectors;
+        this.catalog = catalog;
+        this.cache = cache;
+        this.decoder = decoder;
+        this.executor = executor;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.tasks = new HashMap<Integer, DecodeTask>();
+    }
+
+    /**
+     * Change how many upcoming flags are decoded ahead, from the next
+     * prefetch. Must be called from the main thread.
+     *
+     * @param prefetchDepth Flags decoded ahead, 0 to decode each flag when shown
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Queue the decoding of the next flags of the quiz.
+     *
+     * @param quizFlagIds Flag ids in the order they will be shown
+     * @param next        Position of the next flag to show
+     * @param end         Number of flags in the quiz
+     */
+    public void prefetch(int[] quizFlagIds, int next, int end) {
+        int last = Math.min(next + this.prefetchDepth, end);
+        for (int i = next; i < last; i++)
+            this.obtainTask(quizFlagIds[i]);
+    }
+
+    /**
+     * Hand a flag to the callback, straight away if it is already decoded.
+     * Must be called from the main thread.
+     *
+     * @param flagId   Flag id
+     * @param callback Receives the decoded flag
+     */
+    public void load(int flagId, Callback callback) {
+        DecodeTask task = this.obtainTask(flagId);
+        this.tasks.remove(flagId); // a flag is shown once per quiz
+
+        if (task.done) {
+            callback.onFlagLoaded(flagId, task.bitmap);
+        } else {
+            task.callback = callback; // delivered when the decode finishes
+        }
+    }
+
+    /**
+     * Forget every queued or decoded flag, e.g. when the quiz restarts.
+     */
+    public void clear() {
+        for (DecodeTask task : this.tasks.values()) {
+            task.callback = null;
+            task.cancelled = true;
+            if (task.done) {
+                this.cache.release(task.bitmap); // never shown
+            }
+        }
+        this.tasks.clear();
+    }
+
+    /**
+     * Stop the decoding thread. The loader can't be used afterwards.
+     */
+    public void shutdown() {
+        this.clear();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Return the task decoding the flag, queueing it if the flag
+     * is not in the cache.
+     *
+     * @param flagId Flag id
+     * @return Decode task
+     */
+    private DecodeTask obtainTask(int flagId) {
+        DecodeTask task = this.tasks.get(flagId);
+        if (task == null) {
+            task = new DecodeTask(flagId);
+            this.tasks.put(flagId, task);
+
+            Bitmap cached = this.cache.getAndRetain(task.key);
+            if (cached != null) { // already decoded by an earlier quiz
+                task.bitmap = cached;
+                task.done = true;
+            } else {
+                this.executor.execute(task);
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Render a flag from its vector, or else decode it from the flag pack.
+     *
+     * @param flagId Flag id
+     * @param size   Size to decode at
+     * @return Decoded flag or null on error
+     */
+    private Bitmap decode(int flagId, FlagDecoder.DecodeSize size) {
+        FlagVectors.VectorFlag vector = this.vectors.getFlag(flagId);
+        if (vector != null) {
+            return this.decoder.decode(vector, size);
+        }
+        if (!this.pack.hasImage(flagId)) {
+            Log.e(TAG, "Flag " + flagId + " is not in the flag pack");
+            return null;
+        }
+        try {
+            // reads the PNG straight from the mapped pack
+            return this.decoder.decode(this.pack.openFlag(flagId), size);
+        } catch (IOException exception) {
+            Log.e(TAG, "Error loading " + this.catalog.getAssetPath(flagId), exception);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes one flag in the background and posts it back to the main thread.
+     * done and callback are only touched on the main thread.
+     */
+    private class DecodeTask implements Runnable {
+        private final int flagId;
+        // taken when queued, so the key matches what is decoded even if
+        // the size changes before the decode runs
+        private final FlagDecoder.DecodeSize size;
+        private final String key; // in the cache
+        private Bitmap bitmap; // published through the handler
+        private boolean done;
+        private boolean cancelled; // cleared before being handed out
+        private Callback callback;
+
+        DecodeTask(int flagId) {
+            this.flagId = flagId;
+            this.size = decoder.getDecodeSize();
+            this.key = FlagCache.getKey(catalog.getAssetPath(flagId), this.size);
+        }
+
+        @Override
+        public void run() {
+            this.bitmap = decode(this.flagId, this.size);
+            if (this.bitmap != null) {
+                cache.putAndRetain(this.key, this.bitmap);
+            }
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    done = true;
+                    if (callback != null) {
+                        callback.onFlagLoaded(flagId, bitmap);
+                        callback = null;
+                    } else if (cancelled) {
+                        cache.release(bitmap); // never shown
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,68 @@
+// FlagPackLoader.java
+// Memory-maps the flag pack from the assets once per process
+package com.hektor7.flagquiz;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public final class FlagPackLoader {
+    // String used when logging error messages
+    private static final String TAG = "FlagQuiz Pack";
+
+    private static FlagPack instance; // mapped once per process
+
+    private FlagPackLoader() {
+    }
+
+    /**
+     * Return the pack, mapping it from the assets the first time.
+     * The pack is stored uncompressed in the APK, so it is mapped in
+     * place; the mapping outlives the file descriptor, so no file
+     * stays open.
+     *
+     * @param assets Assets holding the pack
+     * @return Flag pack, empty if it couldn't be mapped
+     */
+    public static synchronized FlagPack getInstance(AssetManager assets) {
+        if (instance == null) {
+            instance = load(assets);
+        }
+        return instance;
+    }
+
+    private static FlagPack load(AssetManager assets) {
+        AssetFileDescriptor descriptor = null;
+        FileInputStream stream = null;
+        try {
+            descriptor = assets.openFd(FlagPack.PACK_FILE);
+            stream = new FileInputStream(descriptor.getFileDescriptor());
+            ByteBuffer buffer = stream.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+            return FlagPack.read(buffer);
+        } catch (IOException exception) {
+            Log.e(TAG, "Error mapping the flag pack", exception);
+            return FlagPack.empty();
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                    // nothing else to do
+                }
+            }
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (IOException ignored) {
+                    // nothing else to do
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+// FlagRenderer.java
+// Draws vector flags into bitmaps of the exact size they are displayed at
+package com.hektor7.flagquiz;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.os.Build;
+
+/**
+ * Renders FlagVectors flags with fitCenter scaling, so they are sharp
+ * at any density and no bigger than the view. Rendered flags are
+ * cached by FlagCache like decoded ones, and drawn into pooled bitmaps
+ * when one fits. Not thread-safe; FlagDecoder calls it under its lock.
+ */
+public class FlagRenderer {
+    private final BitmapPool bitmapPool; // bitmaps to draw into, may be null
+    private final Paint paint; // reused for every rectangle
+
+    /**
+     * @param bitmapPool Bitmaps to draw into, null to always allocate
+     */
+    public FlagRenderer(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+        this.paint = new Paint();
+        this.paint.setStyle(Paint.Style.FILL);
+        this.paint.setDither(true); // gradients band in RGB_565 otherwise
+    }
+
+    /**
+     * Render a flag as large as fits in the target.
+     *
+     * @param flag         Vector flag
+     * @param targetWidth  Target width in pixels, 0 if unknown
+     * @param targetHeight Target height in pixels, 0 if unknown
+     * @return Rendered flag
+     */
+    public Bitmap render(FlagVectors.VectorFlag flag, int targetWidth, int targetHeight) {
+        float scale = 1;
+        if (targetWidth > 0 && targetHeight > 0) {
+            scale = Math.min(targetWidth / (float) flag.getWidth(),
+                    targetHeight / (float) flag.getHeight());
+        }
+        int width = Math.max(1, Math.round(flag.getWidth() * scale));
+        int height = Math.max(1, Math.round(flag.getHeight() * scale));
+        Bitmap.Config config = flag.isOpaque() ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+
+        Bitmap bitmap = this.obtainBitmap(width, height, config);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale(width / (float) flag.getWidth(), height / (float) flag.getHeight());
+        for (int i = 0; i < flag.getRectCount(); i++) {
+            float left = flag.getLeft(i);
+            float top = flag.getTop(i);
+            float bottom = top + flag.getRectHeight(i);
+            int topColor = flag.getTopColor(i);
+            int bottomColor = flag.getBottomColor(i);
+            if (topColor == bottomColor) {
+                this.paint.setShader(null);
+                this.paint.setColor(topColor);
+            } else {
+                // the traced colors are those of the first and last row centers
+                this.paint.setShader(new LinearGradient(0, top + 0.5f, 0, bottom - 0.5f,
+                        topColor, bottomColor, Shader.TileMode.CLAMP));
+            }
+            canvas.drawRect(left, top, left + flag.getRectWidth(i), bottom, this.paint);
+        }
+        this.paint.setShader(null);
+        return bitmap;
+    }
+
+    private Bitmap obtainBitmap(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        if (this.bitmapPool != null) {
+            bitmap = this.bitmapPool.get(width, height, config, 1);
+        }
+        if (bitmap != null) {
+            if (bitmap.getWidth() != width || bitmap.getHeight() != height
+                    || bitmap.getConfig() != config) {
+                reconfigure(bitmap, width, height, config); // only pooled from API 19
+            }
+            bitmap.eraseColor(0);
+            this.bitmapPool.recordHit(bitmap);
+            return bitmap;
+        }
+        bitmap = Bitmap.createBitmap(width, height, config);
+        if (this.bitmapPool != null) {
+            this.bitmapPool.recordMiss(bitmap);
+        }
+        return bitmap;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        bitmap.reconfigure(width, height, config);
+    }
+}
@@ -0,0 +1,51 @@
+// FlagSimilarityLoader.java
+// Loads the flag similarity index from the assets once per process
+package com.hektor7.flagquiz;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class FlagSimilarityLoader {
+    // String used when logging error messages
+    private static final String TAG = "FlagQuiz Similarity";
+
+    private static FlagSimilarity instance; // loaded once per process
+
+    private FlagSimilarityLoader() {
+    }
+
+    /**
+     * Return the similarity index, loading it from the assets the first time.
+     *
+     * @param assets Assets holding the index
+     * @return Flag similarity, empty if it couldn't be read
+     */
+    public static synchronized FlagSimilarity getInstance(AssetManager assets) {
+        if (instance == null) {
+            instance = load(assets);
+        }
+        return instance;
+    }
+
+    private static FlagSimilarity load(AssetManager assets) {
+        InputStream stream = null;
+        try {
+            stream = assets.open(FlagSimilarity.SIMILARITY_FILE);
+            return FlagSimilarity.read(stream);
+        } catch (IOException exception) {
+            Log.e(TAG, "Error loading the flag similarity index", exception);
+            return FlagSimilarity.empty();
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                    // nothing else to do
+                }
+            }
+        }
+    }
+}
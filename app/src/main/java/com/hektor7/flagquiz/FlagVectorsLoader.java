@@ -0,0 +1,51 @@
+// FlagVectorsLoader.java
+// Loads the flag vectors from the assets once per process
+package com.hektor7.flagquiz;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class FlagVectorsLoader {
+    // String used when logging error messages
+    private static final String TAG = "FlagQuiz Vectors";
+
+    private static FlagVectors instance; // loaded once per process
+
+    private FlagVectorsLoader() {
+    }
+
+    /**
+     * Return the vectors, loading them from the assets the first time.
+     *
+     * @param assets Assets holding the vectors
+     * @return Flag vectors, empty if they couldn't be read
+     */
+    public static synchronized FlagVectors getInstance(AssetManager assets) {
+        if (instance == null) {
+            instance = load(assets);
+        }
+        return instance;
+    }
+
+    private static FlagVectors load(AssetManager assets) {
+        InputStream stream = null;
+        try {
+            stream = assets.open(FlagVectors.VECTOR_FILE);
+            return FlagVectors.read(stream);
+        } catch (IOException exception) {
+            Log.e(TAG, "Error loading the flag vectors", exception);
+            return FlagVectors.empty();
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                    // nothing else to do
+                }
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
 import android.graphics.Point;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.view.Display;
 import android.view.Menu;
@@ -18,25 +19,60 @@ import android.view.MenuItem;
 import android.view.WindowManager;
 import android.widget.Toast;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.HashSet;
 import java.util.Set;
 
 public class MainActivity extends Activity {
     // keys for reading data from SharedPreferences
     public static final String CHOICES = "pref_numberOfChoices";
     public static final String REGIONS = "pref_regionsToInclude";
+    public static final String FLAGS = "pref_flagsInQuiz";
+    public static final String ADAPTIVE = "pref_adaptive";
+    public static final String DIFFICULTY = "pref_difficulty";
+    public static final String TIMED = "pref_timed";
+    public static final String QUESTION_DELAY = "pref_questionDelay";
+
+    // seed of a quiz to replay, e.g. adb shell am start
+    // -n com.hektor7.flagquiz/.MainActivity --el com.hektor7.flagquiz.SEED 42
+    public static final String EXTRA_QUIZ_SEED = "com.hektor7.flagquiz.SEED";
+
+    // wait for settings to stop changing before restarting the quiz
+    private static final long RECONFIGURATION_DELAY = 750;
 
     private boolean phoneDevice = true; // used to force portrait mode
     private boolean preferencesChanged = true; // did preferences change?
+    private boolean choicesChanged = true; // did CHOICES change?
+    private boolean flagsChanged = true; // did FLAGS change?
+    private boolean adaptiveChanged = true; // did ADAPTIVE change?
+    private boolean difficultyChanged = true; // did DIFFICULTY change?
+    private boolean timedChanged = true; // did TIMED or QUESTION_DELAY change?
+    private boolean regionsChanged = true; // did REGIONS change?
+    private boolean started; // between onStart and onStop
+    private boolean resumingQuiz; // recreated, the quiz in progress goes on
+    private final Handler handler = new Handler(); // debounces settings
 
     private QuizFragment quizFragment;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupProfiler.start();
         super.onCreate(savedInstanceState);
+
+        // read the flag catalog while the layout is inflated
+        FlagCatalogLoader.preload(getAssets());
         setContentView(R.layout.activity_main);
+        StartupProfiler.mark("setContentView");
 
         this.setupPreferences();
+        StartupProfiler.mark("preferences");
         this.setupScreen();
+        if (savedInstanceState == null) {
+            this.setupQuizSeed();
+        } else {
+            this.resumingQuiz = true; // e.g. rotated, or the process was killed
+        }
 
     }
 
@@ -44,9 +80,11 @@ public class MainActivity extends Activity {
     @Override
     protected void onStart() {
         super.onStart();
+        this.started = true;
 
         if (this.preferencesChanged) {
             this.reconfigureQuizFragment();
+            StartupProfiler.mark("quiz reset");
         }
     }
 
@@ -74,45 +112,77 @@ public class MainActivity extends Activity {
     // listener for changes to the app's SharedPreferences
     private OnSharedPreferenceChangeListener preferenceChangeListener =
             new OnSharedPreferenceChangeListener() {
-                //TODO: Refactor
                 // called when the user changes the app's preferences
                 @Override
                 public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-                    preferencesChanged = true; // user changed app settings
-
-                    QuizFragment quizFragment = (QuizFragment)
-                            getFragmentManager().findFragmentById(R.id.quizFragment);
-
                     if (key.equals(CHOICES)) // # of choices to display changed
                     {
-                        quizFragment.updateGuessRows(sharedPreferences);
-                        quizFragment.resetQuiz();
+                        choicesChanged = true;
+                    } else if (key.equals(FLAGS)) // # of flags per quiz changed
+                    {
+                        flagsChanged = true;
+                    } else if (key.equals(ADAPTIVE)) // adaptive quizzes toggled
+                    {
+                        adaptiveChanged = true;
+                    } else if (key.equals(DIFFICULTY)) // lookalike distractors changed
+                    {
+                        difficultyChanged = true;
+                    } else if (key.equals(TIMED) || key.equals(QUESTION_DELAY)) // pace changed
+                    {
+                        timedChanged = true;
                     } else if (key.equals(REGIONS)) // regions to include changed
                     {
                         Set<String> regions =
                                 sharedPreferences.getStringSet(REGIONS, null);
 
                         if (regions != null && regions.size() > 0) {
-                            quizFragment.updateRegions(sharedPreferences);
-                            quizFragment.resetQuiz();
+                            regionsChanged = true;
                         } else // must select one region--set North America as default
                         {
-                            SharedPreferences.Editor editor = sharedPreferences.edit();
-                            regions.add(
+                            // this change calls the listener again
+                            Set<String> defaultRegions = new HashSet<String>();
+                            defaultRegions.add(
                                     getResources().getString(R.string.default_region));
-                            editor.putStringSet(REGIONS, regions);
-                            editor.commit();
+                            SharedPreferences.Editor editor = sharedPreferences.edit();
+                            editor.putStringSet(REGIONS, defaultRegions);
+                            editor.apply(); // written off the main thread
                             Toast.makeText(MainActivity.this,
                                     R.string.default_region_message,
                                     Toast.LENGTH_SHORT).show();
+                            return;
                         }
+                    } else {
+                        return; // not a quiz setting
                     }
 
-                    Toast.makeText(MainActivity.this,
-                            R.string.restarting_quiz, Toast.LENGTH_SHORT).show();
+                    preferencesChanged = true; // user changed app settings
+                    scheduleReconfiguration();
                 } // end method onSharedPreferenceChanged
             }; // end anonymous inner class
 
+    // applies the settings changed during the debounce delay at once
+    private final Runnable reconfiguration = new Runnable() {
+        @Override
+        public void run() {
+            reconfigureQuizFragment();
+            Toast.makeText(MainActivity.this,
+                    R.string.restarting_quiz, Toast.LENGTH_SHORT).show();
+        }
+    };
+
+    /**
+     * Reconfigure the quiz once the settings stop changing. While the
+     * activity is stopped (SettingsActivity on a phone) nothing is
+     * scheduled: onStart applies every pending change.
+     */
+    private void scheduleReconfiguration() {
+        this.handler.removeCallbacks(this.reconfiguration);
+        if (this.started) {
+            this.handler.postDelayed(this.reconfiguration,
+                    RECONFIGURATION_DELAY);
+        }
+    }
+
     /**
      * Sets screen configuration.
      */
@@ -134,6 +204,17 @@ public class MainActivity extends Activity {
         }
     }
 
+    /**
+     * Replay the quiz whose seed was passed in the Intent, if any.
+     */
+    private void setupQuizSeed() {
+        Intent intent = getIntent();
+        if (intent.hasExtra(EXTRA_QUIZ_SEED)) {
+            this.getQuizFragment().replayQuiz(
+                    intent.getLongExtra(EXTRA_QUIZ_SEED, 0));
+        }
+    }
+
     /**
      * Configure preferences
      */
@@ -147,13 +228,51 @@ public class MainActivity extends Activity {
                         this.preferenceChangeListener);
     }
 
+    // cancels a pending reconfiguration, onStart applies it instead
+    @Override
+    protected void onStop() {
+        super.onStop();
+        this.started = false;
+        this.handler.removeCallbacks(this.reconfiguration);
+    }
+
     /**
-     * Reconfigure the quiz fragment, reset and show it.
+     * Reconfigure the quiz fragment with the changed settings, reset and
+     * show it. When the activity was recreated the quiz in progress is
+     * shown again instead, unless it doesn't fit the settings.
      */
     private void reconfigureQuizFragment() {
-        this.guessRowsChanges();
-        this.regionsChanges();
-        this.getQuizFragment().resetQuiz();
+        this.handler.removeCallbacks(this.reconfiguration);
+        if (this.choicesChanged) {
+            this.guessRowsChanges();
+        }
+        if (this.flagsChanged) {
+            this.flagsInQuizChanges();
+        }
+        if (this.adaptiveChanged) {
+            this.adaptiveChanges();
+        }
+        if (this.difficultyChanged) {
+            this.difficultyChanges();
+        }
+        if (this.timedChanged) {
+            this.timedChanges();
+        }
+        if (this.regionsChanged) {
+            this.regionsChanges();
+        }
+        if (this.resumingQuiz) {
+            this.resumingQuiz = false;
+            this.getQuizFragment().resumeQuiz();
+        } else {
+            this.getQuizFragment().resetQuiz();
+        }
+        this.choicesChanged = false;
+        this.flagsChanged = false;
+        this.adaptiveChanged = false;
+        this.difficultyChanged = false;
+        this.timedChanged = false;
+        this.regionsChanged = false;
         this.preferencesChanged = false;
     }
 
@@ -165,6 +284,38 @@ public class MainActivity extends Activity {
                 PreferenceManager.getDefaultSharedPreferences(this));
     }
 
+    /**
+     * Reconfigure flags per quiz
+     */
+    private void flagsInQuizChanges() {
+        this.getQuizFragment().updateFlagsInQuiz(
+                PreferenceManager.getDefaultSharedPreferences(this));
+    }
+
+    /**
+     * Reconfigure adaptive quizzes
+     */
+    private void adaptiveChanges() {
+        this.getQuizFragment().updateAdaptive(
+                PreferenceManager.getDefaultSharedPreferences(this));
+    }
+
+    /**
+     * Reconfigure how alike the wrong answers look
+     */
+    private void difficultyChanges() {
+        this.getQuizFragment().updateDifficulty(
+                PreferenceManager.getDefaultSharedPreferences(this));
+    }
+
+    /**
+     * Reconfigure the timed mode and question delay
+     */
+    private void timedChanges() {
+        this.getQuizFragment().updateTimed(
+                PreferenceManager.getDefaultSharedPreferences(this));
+    }
+
     /**
      * Reconfigure rows
      */
@@ -193,6 +344,15 @@ public class MainActivity extends Activity {
         return isPortrait;
     }
 
+    // adb shell dumpsys activity com.hektor7.flagquiz prints QuizTrace,
+    // then the fragments, with the MemoryGovernor of QuizFragment
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer,
+                     String[] args) {
+        super.dump(prefix, fd, writer, args);
+        QuizTrace.dump(prefix, writer);
+    }
+
     private QuizFragment getQuizFragment() {
         if (this.quizFragment == null) {
             this.quizFragment = (QuizFragment) getFragmentManager().findFragmentById(R.id.quizFragment);
@@ -0,0 +1,213 @@
+// MemoryGovernor.java
+// Scales the flag memory use to the device and steps it down under memory pressure
+package com.hektor7.flagquiz;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+
+/**
+ * Picks a memory tier from the device's memory class and
+ * isLowRamDevice (API 19+), and applies it to the decode resolution,
+ * the prefetch depth and the flag cache and bitmap pool sizes. Memory
+ * pressure reported through onTrimMemory steps the tier down at once;
+ * it steps back up one tier per quiz once the pressure is over.
+ * Only the main thread may use it.
+ * Report it with: adb shell dumpsys activity com.hektor7.flagquiz
+ */
+public class MemoryGovernor {
+    // String used when logging tier changes
+    private static final String TAG = "FlagQuiz Memory";
+
+    // tiers, from the most memory to the least
+    public static final int TIER_FULL = 0;
+    public static final int TIER_REDUCED = 1;
+    public static final int TIER_MINIMAL = 2;
+    private static final String[] TIER_NAMES = {"full", "reduced", "minimal"};
+
+    // per tier: target size divider, flags decoded ahead, cache and pool size shift
+    private static final int[] DOWNSCALE = {1, 1, 2};
+    private static final int[] PREFETCH_DEPTH = {FlagLoader.PREFETCH_DEPTH, 1, 0};
+    private static final int[] SIZE_SHIFT = {0, 1, 2};
+
+    // largest memory class, in megabytes, of each tier below full
+    private static final int REDUCED_MEMORY_CLASS = 48;
+    private static final int MINIMAL_MEMORY_CLASS = 24;
+
+    // no memory pressure for this long before stepping up a tier
+    private static final long RECOVERY_DELAY_MS = 60000;
+
+    private final FlagCache flagCache; // sized by the tier
+    private final BitmapPool bitmapPool; // sized by the tier
+    private final FlagDecoder flagDecoder; // resolution set by the tier
+    private final int memoryClass; // in megabytes
+    private final boolean lowRamDevice;
+    private final int deviceTier; // tier without memory pressure
+    private final int maxCacheBytes; // cache size of the full tier
+    private final int maxPoolBytes; // pool size of the full tier
+    private FlagLoader flagLoader; // prefetch depth set by the tier, may be null
+    private int tier;
+    private int trims; // onTrimMemory and onLowMemory calls
+    private int lastTrimLevel = -1;
+    private long lastTrimMillis; // elapsedRealtime of the last trim
+    private long reclaimedBytes; // freed from the cache and pool by trims
+
+    /**
+     * Create a governor and apply the tier of the device.
+     *
+     * @param context     Context used to read the memory class
+     * @param flagCache   Flag cache, created at the size of the full tier
+     * @param bitmapPool  Bitmap pool, created at the size of the full tier
+     * @param flagDecoder Flag decoder
+     */
+    public MemoryGovernor(Context context, FlagCache flagCache, BitmapPool bitmapPool,
+                          FlagDecoder flagDecoder) {
+        this.flagCache = flagCache;
+        this.bitmapPool = bitmapPool;
+        this.flagDecoder = flagDecoder;
+        this.maxCacheBytes = flagCache.maxSize();
+        this.maxPoolBytes = bitmapPool.getMaxBytes();
+
+        ActivityManager activityManager = (ActivityManager)
+                context.getSystemService(Context.ACTIVITY_SERVICE);
+        this.memoryClass = activityManager.getMemoryClass();
+        this.lowRamDevice = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && isLowRamDevice(activityManager);
+        if (this.lowRamDevice || this.memoryClass <= MINIMAL_MEMORY_CLASS) {
+            this.deviceTier = TIER_MINIMAL;
+        } else if (this.memoryClass <= REDUCED_MEMORY_CLASS) {
+            this.deviceTier = TIER_REDUCED;
+        } else {
+            this.deviceTier = TIER_FULL;
+        }
+        this.setTier(this.deviceTier);
+    }
+
+    /**
+     * Apply the prefetch depth of the tier to a loader, e.g. once it is created.
+     *
+     * @param flagLoader Flag loader
+     */
+    public void setFlagLoader(FlagLoader flagLoader) {
+        this.flagLoader = flagLoader;
+        flagLoader.setPrefetchDepth(PREFETCH_DEPTH[this.tier]);
+    }
+
+    /**
+     * @return Current tier, TIER_FULL to TIER_MINIMAL
+     */
+    public int getTier() {
+        return this.tier;
+    }
+
+    /**
+     * @return Bytes freed from the flag cache and bitmap pool by trims
+     */
+    public long getReclaimedBytes() {
+        return this.reclaimedBytes;
+    }
+
+    /**
+     * Free memory as the system asks. While the app is in the foreground
+     * the tier steps down; in the background the flags are dropped.
+     *
+     * @param level Level passed to ComponentCallbacks2.onTrimMemory
+     */
+    public void onTrimMemory(int level) {
+        long held = this.getHeldBytes();
+        String from = TIER_NAMES[this.tier];
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // the process is next to be killed
+            this.stepDown(TIER_MINIMAL);
+            this.flagCache.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            this.flagCache.clear(); // decoded again when the app is back
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            this.bitmapPool.clear(); // nothing is decoded while hidden
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            this.stepDown(TIER_MINIMAL);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            this.stepDown(TIER_REDUCED);
+        }
+
+        long reclaimed = Math.max(0, held - this.getHeldBytes());
+        ++this.trims;
+        this.lastTrimLevel = level;
+        this.lastTrimMillis = SystemClock.elapsedRealtime();
+        this.reclaimedBytes += reclaimed;
+        Log.i(TAG, "Trim level " + level + ": " + from + " -> " + TIER_NAMES[this.tier]
+                + ", reclaimed " + reclaimed + " bytes");
+    }
+
+    /**
+     * Free every flag, as for the strongest trim level.
+     */
+    public void onLowMemory() {
+        this.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * Step up a tier, towards the tier of the device, if there was no
+     * memory pressure for RECOVERY_DELAY_MS. Called when a quiz starts.
+     */
+    public void recover() {
+        if (this.tier > this.deviceTier
+                && SystemClock.elapsedRealtime() - this.lastTrimMillis >= RECOVERY_DELAY_MS) {
+            Log.i(TAG, "Recovered: " + TIER_NAMES[this.tier] + " -> "
+                    + TIER_NAMES[this.tier - 1]);
+            this.setTier(this.tier - 1);
+        }
+    }
+
+    /**
+     * Print the tier, what it sets and the memory reclaimed so far.
+     *
+     * @param prefix Prefix of each line
+     * @param writer Destination, e.g. the one of Fragment.dump
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "MemoryGovernor: tier=" + TIER_NAMES[this.tier]
+                + " device=" + TIER_NAMES[this.deviceTier]
+                + " memoryClass=" + this.memoryClass + "MB"
+                + " lowRam=" + this.lowRamDevice);
+        writer.println(prefix + "  downscale=" + DOWNSCALE[this.tier]
+                + " prefetch=" + PREFETCH_DEPTH[this.tier]
+                + " trims=" + this.trims + " lastTrimLevel=" + this.lastTrimLevel
+                + " reclaimed=" + this.reclaimedBytes + " bytes");
+        writer.println(prefix + "  " + this.flagCache.getStatistics());
+        writer.println(prefix + "  " + this.bitmapPool.getStatistics());
+    }
+
+    private void stepDown(int tier) {
+        if (tier > this.tier) {
+            this.setTier(tier);
+        }
+    }
+
+    private void setTier(int tier) {
+        this.tier = tier;
+        this.flagDecoder.setDownscale(DOWNSCALE[tier]);
+        if (this.flagLoader != null) {
+            this.flagLoader.setPrefetchDepth(PREFETCH_DEPTH[tier]);
+        }
+        // the pool first, so that it drops what the cache evicts into it
+        this.bitmapPool.setMaxBytes(this.maxPoolBytes >> SIZE_SHIFT[tier]);
+        this.flagCache.setBudget(this.maxCacheBytes >> SIZE_SHIFT[tier]);
+    }
+
+    // bytes of the flags the cache and pool hold
+    private long getHeldBytes() {
+        return (long) this.flagCache.size() + this.bitmapPool.getBytes();
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static boolean isLowRamDevice(ActivityManager activityManager) {
+        return activityManager.isLowRamDevice();
+    }
+}
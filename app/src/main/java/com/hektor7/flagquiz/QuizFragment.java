@@ -6,12 +6,13 @@ import android.app.AlertDialog;
 import android.app.Dialog;
 import android.app.DialogFragment;
 import android.app.Fragment;
+import android.app.FragmentManager;
 import android.content.DialogInterface;
 import android.content.SharedPreferences;
-import android.content.res.AssetManager;
-import android.graphics.drawable.Drawable;
+import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.os.Handler;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -23,12 +24,9 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.security.SecureRandom;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.HashSet;
 import java.util.Set;
 
 import butterknife.ButterKnife;
@@ -36,22 +34,62 @@ import butterknife.InjectView;
 import butterknife.InjectViews;
 import butterknife.OnClick;
 
+/**
+ * Retained across configuration changes: the quiz, the flag cache and
+ * the flag shown survive rotation, and only the views are rebound.
+ * The quiz is also saved compactly in the instance state, so it goes
+ * on at the same question after the process is killed.
+ */
 public class QuizFragment extends Fragment {
     // String used when logging error messages
     private static final String TAG = "FlagQuiz Activity";
 
-    private static final int FLAGS_IN_QUIZ = 10;
+    // keys of the instance state
+    private static final String QUIZ_STATE = "quizState";
+    private static final String QUIZ_SEED = "quizSeed";
 
-    private List<String> fileNameList; // flag file names
-    private List<String> quizCountriesList; // countries in current quiz
+    private static final long DEFAULT_QUESTION_DELAY = 2000; // ms after a correct guess
+
+    // percentiles of the reaction times in the timed results
+    private static final double[] RESULT_PERCENTILES = {50, 90};
+
+    private static final int DEFAULT_FLAGS_IN_QUIZ = 10;
+
+    // farthest lookalike wrong answer, -1 for random ones (easy)
+    private static final int DEFAULT_DIFFICULTY = -1;
+
+    // the bitmap pool keeps up to a quarter of the cache size
+    private static final int BITMAP_POOL_DIVIDER = 4;
+
+    private FlagCatalog flagCatalog; // every flag in the assets
+    private CountryNameTable countryNames; // display strings of the flags
+    private String[] questionTexts; // "Question i of n" of the current quiz size
+    private QuizEngine quizEngine; // quiz state and rules
+    private int flagsInQuizSetting; // flags per quiz chosen, 0 for all
     private Set<String> regionsSet; // world regions in current quiz
-    private String correctAnswer; // correct country for the current flag
-    private int totalGuesses; // number of guesses made
-    private int correctAnswers; // number of correct guesses
     private int guessRows; // number of rows displaying guess Buttons
-    private SecureRandom random; // used to randomize the quiz
+    private QuizRandom seedSource; // picks the seed of each new quiz
+    private long quizSeed; // seed of current quiz, replays it exactly
+    private boolean replayingSeed; // next quiz uses quizSeed again
     private Handler handler; // used to delay loading next flag
+    private BitmapPool bitmapPool; // flags no longer used, decoded into again
+    private FlagCache flagCache; // flags kept decoded across quizzes
+    private Bitmap shownFlag; // flag in flagImageView, retained in flagCache
+    private long flagShownNanos; // when the current flag was shown
+    private QuizTimer quizTimer; // reaction time of each question
+    private boolean timed; // speed run: no delay, times in the results
+    private long questionDelay = DEFAULT_QUESTION_DELAY; // ms after a correct guess
+    private QuizHistory quizHistory; // every guess, for the statistics
+    private boolean adaptive = true; // mastered flags are shown less often
+    private int maxDistractorDistance = DEFAULT_DIFFICULTY; // see DEFAULT_DIFFICULTY
+    private FlagDecoder flagDecoder; // decodes flags at their displayed size
+    private FlagLoader flagLoader; // decodes flags off the main thread
+    private MemoryGovernor memoryGovernor; // sizes the flag memory to the device
     private Animation shakeAnimation; // animation for incorrect guess
+    private long correctAnswerNanos; // of the question before, 0 if none, for QuizTrace
+    private long shakeStartNanos; // when the shake began, for QuizTrace
+    private boolean nextQuestionPending; // nextQuestionTask is posted
+    private int[] savedQuizState; // quiz saved before the process was killed
 
     @InjectView(R.id.questionNumberTextView)
     TextView questionNumberTextView; // shows current question #
@@ -66,6 +104,20 @@ public class QuizFragment extends Fragment {
     TextView answerTextView; // displays Correct! or Incorrect!
 
 
+    // creates what outlives the views; called once, the fragment is retained
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+
+        this.setupAtributes();
+        if (savedInstanceState != null) {
+            // the process was killed, resumeQuiz restores the quiz
+            this.savedQuizState = savedInstanceState.getIntArray(QUIZ_STATE);
+            this.quizSeed = savedInstanceState.getLong(QUIZ_SEED);
+        }
+    }
+
     // configures the QuizFragment when its View is created
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -78,26 +130,93 @@ public class QuizFragment extends Fragment {
         //Injectar vistas
         ButterKnife.inject(this, view);
 
-        this.setupAtributes();
         this.setupListenerForGuessButtons();
+        this.questionTexts = null; // the configuration may change the strings
+        if (this.flagCatalog != null) {
+            // cached per locale, so a language change only swaps the table
+            this.countryNames = CountryNamesLoader.getInstance(getResources(),
+                    this.flagCatalog);
+        }
+
+        // set questionNumberTextView's text
+        this.questionNumberTextView.setText(
+                getResources().getString(R.string.question, 1, DEFAULT_FLAGS_IN_QUIZ));
 
         return view; // returns the fragment's view for display
     }
 
+    // saves the current quiz in case the process is killed
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (this.isQuizStarted()) {
+            outState.putIntArray(QUIZ_STATE, this.quizEngine.saveQuiz());
+            outState.putLong(QUIZ_SEED, this.quizSeed);
+        }
+    }
+
+    // stops decoding flags when the fragment goes away
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        this.handler.removeCallbacks(this.nextQuestionTask);
+        if (this.flagLoader != null) {
+            this.flagLoader.shutdown();
+        }
+        this.quizHistory.close();
+    }
+
+    // writes the guesses still queued
+    @Override
+    public void onPause() {
+        super.onPause();
+        this.quizHistory.flush();
+    }
+
+    // uses less memory for flags, or releases them, as the system asks
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        this.memoryGovernor.onTrimMemory(level);
+    }
+
+    // releases cached flags when the whole system runs short of memory
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        this.memoryGovernor.onLowMemory();
+    }
+
+    // printed by adb shell dumpsys activity com.hektor7.flagquiz
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        this.memoryGovernor.dump(prefix, writer);
+        this.quizHistory.dump(prefix, writer);
+    }
+
     /**
      * After the user guesses a correct flag, load the next flag
      */
     private void loadNextFlag() {
-        String nextImage = this.obtainNextGuessAndSetAnswer();
+        long start = QuizTrace.beginSection(QuizTrace.LOAD_NEXT_FLAG);
+        QuizTrace.watchFrames(QuizTrace.TRANSITION_FRAMES);
+        this.quizTimer.questionChanged(); // timed once its flag is shown
+
+        int nextImage = this.obtainNextGuessAndSetAnswer();
         this.setupImageGuess(nextImage);
-        this.shuffleAnswers();
+        this.flagLoader.prefetch(this.quizEngine.getQuizFlags(),
+                this.quizEngine.getQuestion() + 1,
+                this.quizEngine.getFlagsInQuiz()); // decode the next flags
         this.setupAnswersButtons();
+        QuizTrace.endSection(QuizTrace.LOAD_NEXT_FLAG, start);
     }
 
     /**
-     * Set up randomly the answers buttons.
+     * Set up the answers buttons with the chosen answers.
      */
     private void setupAnswersButtons() {
+        long start = QuizTrace.beginSection(QuizTrace.SETUP_ANSWERS_BUTTONS);
         // add 3, 6, or 9 guess Buttons based on the value of guessRows
         for (int row = 0; row < this.guessRows; row++) {
             // place Buttons in currentTableRow
@@ -109,91 +228,126 @@ public class QuizFragment extends Fragment {
                 newGuessButton.setEnabled(true);
 
                 // get country name and set it as newGuessButton's text
-                String fileName = this.fileNameList.get((row * 3) + column);
-                newGuessButton.setText(getCountryName(fileName));
+                int flagId = this.quizEngine.getAnswer(
+                        (row * QuizEngine.COLUMNS) + column);
+                newGuessButton.setText(getCountryName(flagId));
             }
         }
-
-        this.setupCorrectAnswerButton();
-
+        QuizTrace.endSection(QuizTrace.SETUP_ANSWERS_BUTTONS, start);
     }
 
     /**
-     * Set up the correct answer's button.
+     * Set up the next image (flag)
+     * @param nextImage
+     *              Next image's flag id
      */
-    private void setupCorrectAnswerButton() {
-        // randomly replace one Button with the correct answer
-        int row = this.random.nextInt(this.guessRows); // pick random row
-        int column = this.random.nextInt(3); // pick random column
-        LinearLayout randomRow = this.guessLinearLayouts[row]; // get the row
-        String countryName = getCountryName(this.correctAnswer);
-        ((Button) randomRow.getChildAt(column)).setText(countryName);
+    private void setupImageGuess(int nextImage) {
+        this.updateFlagTargetSize();
+
+        // the flag is normally decoded already by the prefetch
+        this.showFlag(null);
+        this.flagLoader.load(nextImage, new FlagLoader.Callback() {
+            @Override
+            public void onFlagLoaded(int flagId, Bitmap flag) {
+                // ignore flags that arrive after the question changed
+                if (flagId == quizEngine.getCorrectAnswer()) {
+                    showFlag(flag);
+                    StartupProfiler.firstFlagShown();
+                    if (correctAnswerNanos != 0) {
+                        QuizTrace.record(QuizTrace.QUESTION, correctAnswerNanos);
+                        correctAnswerNanos = 0;
+                    }
+                } else {
+                    flagCache.release(flag);
+                }
+            }
+        });
     }
 
     /**
-     * Shuffle answers and set location of the correct one
+     * Show a flag and release the one shown before, so that its
+     * bitmap can be decoded into once it leaves the cache.
+     *
+     * @param flag Flag retained in flagCache, or null to show none
      */
-    private void shuffleAnswers() {
-        Collections.shuffle(this.fileNameList); // shuffle file names
+    private void showFlag(Bitmap flag) {
+        this.flagImageView.setImageBitmap(flag);
+        this.flagShownNanos = System.nanoTime(); // guesses are timed from here
+        if (flag != null) {
+            this.quizTimer.questionShown(this.flagShownNanos);
+        }
+        this.flagCache.release(this.shownFlag);
+        this.shownFlag = flag;
+    }
 
-        // put the correct answer at the end of fileNameList
-        int correct = this.fileNameList.indexOf(this.correctAnswer);
-        this.fileNameList.add(this.fileNameList.remove(correct));
+    /**
+     * Create the flag decoder. Until flagImageView is laid out the flags
+     * are decoded for the whole screen width and half its height.
+     *
+     * @return Flag decoder
+     */
+    private FlagDecoder createFlagDecoder() {
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        return new FlagDecoder(metrics.widthPixels, metrics.heightPixels / 2,
+                this.bitmapPool);
     }
 
     /**
-     * Set up the next image (flag)
-     * @param nextImage
-     *              Next image's name
-     */
-    private void setupImageGuess(String nextImage) {
-
-        // extract the region from the next image's name
-        String region = nextImage.substring(0, nextImage.indexOf('-'));
-        // use AssetManager to load next image from assets folder
-        AssetManager assets = getActivity().getAssets();
-        try {
-            // get an InputStream to the asset representing the next flag
-            InputStream stream =
-                    assets.open(region + "/" + nextImage + ".png");
-
-            // load the asset as a Drawable and display on the flagImageView
-            Drawable flag = Drawable.createFromStream(stream, nextImage);
-            this.flagImageView.setImageDrawable(flag);
-        } catch (IOException exception) {
-            Log.e(TAG, "Error loading " + nextImage, exception);
+     * Decode the next flags at the size of the area flagImageView can use.
+     * The view's own width follows the flag (wrap_content), so the row
+     * width is used instead; its height is fixed by the layout weight.
+     */
+    private void updateFlagTargetSize() {
+        View flagArea = (View) this.flagImageView.getParent();
+        int width = flagArea.getWidth();
+        int height = this.flagImageView.getHeight();
+        if (width > 0 && height > 0) {
+            this.flagDecoder.setTargetSize(width, height);
         }
     }
 
     /**
-     * Obtain next flag name and set answer.
-     * @return Next flag name
+     * Obtain next flag id and clear the answer.
+     * @return Next flag id
      */
-    private String obtainNextGuessAndSetAnswer() {
+    private int obtainNextGuessAndSetAnswer() {
 
-        // get file name of the next flag and remove it from the list
-        String nextImage = this.quizCountriesList.remove(0);
-        this.correctAnswer = nextImage; // update the correct answer
+        // get id of the next flag
+        int nextImage = this.quizEngine.getCorrectAnswer();
         this.answerTextView.setText(""); // clear answerTextView
 
-        //FIXME: Revisar esto... puede que diese error aquí
         // display current question number
         this.questionNumberTextView.setText(
-                getResources().getString(R.string.question,
-                        (this.correctAnswers + 1), FLAGS_IN_QUIZ)
-        );
+                this.getQuestionText(this.quizEngine.getQuestion()));
 
         return nextImage;
     }
 
     /**
-     * Parses the country flag file name and returns the country name
+     * Return the "Question i of n" text, formatted once per quiz size.
      *
-     * @param name Country name
-     * @return Parsed country name
+     * @param question Question index, from 0
+     * @return Text of the question number
      */
-    private String getCountryName(String name) {
-        return name.substring(name.indexOf('-') + 1).replace('_', ' ');
+    private String getQuestionText(int question) {
+        int flagsInQuiz = this.quizEngine.getFlagsInQuiz();
+        if (this.questionTexts == null || this.questionTexts.length != flagsInQuiz) {
+            this.questionTexts = new String[flagsInQuiz];
+            for (int i = 0; i < flagsInQuiz; i++)
+                this.questionTexts[i] = getResources().getString(
+                        R.string.question, i + 1, flagsInQuiz);
+        }
+        return this.questionTexts[question];
+    }
+
+    /**
+     * Returns the country name of a flag
+     *
+     * @param flagId Flag id
+     * @return Country name
+     */
+    private String getCountryName(int flagId) {
+        return this.countryNames.getName(flagId);
     }
 
 
@@ -202,57 +356,26 @@ public class QuizFragment extends Fragment {
 
         if (this.isCorrectAnswer(guessButton))
         {
-            this.setupCorrectAnswerMessage(guessButton.getText().toString());
+            this.quizTimer.questionAnswered(System.nanoTime());
+            this.setupCorrectAnswerMessage(this.quizEngine.getCorrectAnswer());
             this.disableButtons();
 
             if (this.allCorrectAnswers()) {
-                //TODO: Continuar refactorizando
                 // DialogFragment to display quiz stats and start new quiz
-                DialogFragment quizResults =
-                        new DialogFragment() {
-                            // create an AlertDialog and return it
-                            @Override
-                            public Dialog onCreateDialog(Bundle bundle) {
-                                AlertDialog.Builder builder =
-                                        new AlertDialog.Builder(getActivity());
-                                builder.setCancelable(false);
-
-                                builder.setMessage(
-                                        getResources().getString(R.string.results,
-                                                totalGuesses, (1000 / (double) totalGuesses))
-                                );
-
-                                // "Reset Quiz" Button
-                                builder.setPositiveButton(R.string.reset_quiz,
-                                        new DialogInterface.OnClickListener() {
-                                            public void onClick(DialogInterface dialog,
-                                                                int id) {
-                                                resetQuiz();
-                                            }
-                                        } // end anonymous inner class
-                                ); // end call to setPositiveButton
-
-                                return builder.create(); // return the AlertDialog
-                            } // end method onCreateDialog
-                        }; // end DialogFragment anonymous inner class
-
-                // use FragmentManager to display the DialogFragment
-                quizResults.show(getFragmentManager(), "quiz results");
+                QuizResultsDialog.newInstance(this.quizEngine.getTotalGuesses(),
+                        this.quizEngine.getFlagsInQuiz() * 100
+                                / (double) this.quizEngine.getTotalGuesses(),
+                        this.timed ? this.quizTimer : null)
+                        .show(getFragmentManager(), "quiz results");
             } else // answer is correct but quiz is not over
             {
-                // load the next flag after a 1-second delay
-                handler.postDelayed(
-                        new Runnable() {
-                            @Override
-                            public void run() {
-                                loadNextFlag();
-                            }
-                        }, 2000
-                ); // 2000 milliseconds for 2-second delay
+                this.correctAnswerNanos = QuizTrace.now();
+                this.postNextQuestion();
             }
         } else // guess was incorrect
         {
-            flagImageView.startAnimation(shakeAnimation); // play shake
+            flagImageView.startAnimation(getShakeAnimation()); // play shake
+            QuizTrace.watchFrames(QuizTrace.TRANSITION_FRAMES);
 
             // display "Incorrect!" in red
             answerTextView.setText(R.string.incorrect_answer);
@@ -262,20 +385,43 @@ public class QuizFragment extends Fragment {
         }
     }
 
+    /**
+     * Load the next flag after the question delay, none in timed mode.
+     * The next flags are prefetched, so it is normally shown at once.
+     */
+    private void postNextQuestion() {
+        this.nextQuestionPending = true;
+        this.handler.postDelayed(this.nextQuestionTask,
+                this.timed ? 0 : this.questionDelay);
+    }
+
+    // moves to the next question; outlives the views, so it uses the current ones
+    private final Runnable nextQuestionTask = new Runnable() {
+        @Override
+        public void run() {
+            nextQuestionPending = false;
+            quizEngine.nextQuestion();
+            loadNextFlag();
+        }
+    };
+
     /**
      * Returns if all answers are correct.
      *
      * @return true if all are correct.
      */
     private boolean allCorrectAnswers() {
-        return this.correctAnswers == QuizFragment.FLAGS_IN_QUIZ;
+        return this.quizEngine.isQuizOver();
     }
 
-    private void setupCorrectAnswerMessage(String message) {
-        ++correctAnswers; // increment the number of correct answers
-
+    /**
+     * Show the name of the flag guessed.
+     *
+     * @param flagId Flag id of the correct answer
+     */
+    private void setupCorrectAnswerMessage(int flagId) {
         // display correct answer in green text
-        answerTextView.setText(message + "!");
+        answerTextView.setText(this.countryNames.getCorrectMessage(flagId));
         answerTextView.setTextColor(
                 getResources().getColor(R.color.correct_answer));
     }
@@ -287,11 +433,16 @@ public class QuizFragment extends Fragment {
      * @return true if correct answer.
      */
     private boolean isCorrectAnswer(Button guessButton) {
-        String guess = guessButton.getText().toString();
-        String answer = getCountryName(correctAnswer);
-        ++this.totalGuesses; // increment number of guesses the user has made
-
-        return guess.equals(answer);
+        int answerIndex = (Integer) guessButton.getTag();
+        int flag = this.quizEngine.getCorrectAnswer();
+        int answer = this.quizEngine.getAnswer(answerIndex);
+
+        // the engine counts the guess and compares flag ids
+        boolean correct = this.quizEngine.guess(answerIndex);
+        this.quizHistory.record(this.quizSeed, this.flagCatalog.getFileName(flag),
+                this.flagCatalog.getFileName(answer), correct,
+                (System.nanoTime() - this.flagShownNanos) / 1000000);
+        return correct;
     }
 
     /**
@@ -305,14 +456,15 @@ public class QuizFragment extends Fragment {
         }
     }
     /**
-     * Setup listener for guess buttons
+     * Setup guess buttons, tagging each one with its answer index
      */
     private void setupListenerForGuessButtons() {
-        // configure listeners for the guess Buttons
-        for (LinearLayout row : guessLinearLayouts) {
-            for (int column = 0; column < row.getChildCount(); column++) {
-                Button button = (Button) row.getChildAt(column);
-                //button.setOnClickListener(this.guessButtonListener);
+        // clicks are bound by ButterKnife, see clickAnswer
+        for (int row = 0; row < this.guessLinearLayouts.length; row++) {
+            LinearLayout guessRow = this.guessLinearLayouts[row];
+            for (int column = 0; column < guessRow.getChildCount(); column++) {
+                Button button = (Button) guessRow.getChildAt(column);
+                button.setTag((row * QuizEngine.COLUMNS) + column);
             }
         }
     }
@@ -321,26 +473,90 @@ public class QuizFragment extends Fragment {
      * Setup atributes
      */
     private void setupAtributes() {
-        this.fileNameList = new ArrayList<String>();
-        this.quizCountriesList = new ArrayList<String>();
-        this.random = new SecureRandom();
+        this.seedSource = new QuizRandom();
         this.handler = new Handler();
+        this.bitmapPool = new BitmapPool(
+                FlagCache.computeMaxBytes(getActivity()) / BITMAP_POOL_DIVIDER);
+        this.flagCache = new FlagCache(getActivity(), this.bitmapPool);
+        this.flagDecoder = this.createFlagDecoder();
+        this.memoryGovernor = new MemoryGovernor(getActivity(), this.flagCache,
+                this.bitmapPool, this.flagDecoder);
+        this.quizHistory = new QuizHistory(getActivity());
+    }
 
-        // set questionNumberTextView's text
-        this.questionNumberTextView.setText(
-                getResources().getString(R.string.question, 1, FLAGS_IN_QUIZ));
+    /**
+     * Setup the flag catalog and everything sized from it. Deferred to
+     * the first quiz, so the catalog loads while the layout is inflated.
+     */
+    private void setupFlagCatalog() {
+        this.flagCatalog = FlagCatalogLoader.getInstance(getActivity().getAssets());
+        this.countryNames = CountryNamesLoader.getInstance(getResources(),
+                this.flagCatalog);
+        this.quizEngine = new QuizEngine(this.flagCatalog.size(), new QuizRandom());
+        this.quizEngine.setChoices(this.guessRows * QuizEngine.COLUMNS);
+        this.quizEngine.setFlagsInQuiz(this.flagsInQuizSetting);
+        this.quizEngine.setAdaptive(this.adaptive);
+        this.setDistractorSimilarity();
+        this.quizTimer = new QuizTimer(this.flagCatalog.size());
+        this.loadFlagIdList();
+        this.loadFlagScheduler();
+        this.flagLoader = new FlagLoader(
+                FlagPackLoader.getInstance(getActivity().getAssets()),
+                FlagVectorsLoader.getInstance(getActivity().getAssets()),
+                this.flagCatalog, this.flagCache, this.flagDecoder);
+        this.memoryGovernor.setFlagLoader(this.flagLoader);
+        StartupProfiler.mark("flag catalog");
+    }
 
-        this.setupAnimation();
+    /**
+     * Rebuild the Leitner boxes from the history in the background.
+     * Quizzes are uniform until they are ready; the guesses made
+     * meanwhile are replayed into them by the history.
+     */
+    private void loadFlagScheduler() {
+        this.quizHistory.loadScheduler(this.flagCatalog,
+                new QuizHistory.SchedulerCallback() {
+                    @Override
+                    public void onSchedulerLoaded(FlagScheduler scheduler) {
+                        quizEngine.setScheduler(scheduler);
+                    }
+                });
     }
 
+    // times the whole shake, with its repeats
+    private final Animation.AnimationListener shakeTraceListener =
+            new Animation.AnimationListener() {
+                @Override
+                public void onAnimationStart(Animation animation) {
+                    shakeStartNanos = QuizTrace.now();
+                }
+
+                @Override
+                public void onAnimationEnd(Animation animation) {
+                    QuizTrace.record(QuizTrace.SHAKE_ANIMATION, shakeStartNanos);
+                }
+
+                @Override
+                public void onAnimationRepeat(Animation animation) {
+                }
+            };
+
     /**
-     * Setup shake animation
+     * Return the shake animation, loading it on the first incorrect guess
+     *
+     * @return Shake animation
      */
-    private void setupAnimation() {
-        // load the shake animation that's used for incorrect answers
-        this.shakeAnimation = AnimationUtils.loadAnimation(getActivity(),
-                R.anim.incorrect_shake);
-        this.shakeAnimation.setRepeatCount(3); // animation repeats 3 times
+    private Animation getShakeAnimation() {
+        if (this.shakeAnimation == null) {
+            // load the shake animation that's used for incorrect answers
+            this.shakeAnimation = AnimationUtils.loadAnimation(getActivity(),
+                    R.anim.incorrect_shake);
+            this.shakeAnimation.setRepeatCount(3); // animation repeats 3 times
+            if (QuizTrace.ENABLED) {
+                this.shakeAnimation.setAnimationListener(this.shakeTraceListener);
+            }
+        }
+        return this.shakeAnimation;
     }
 
     /**
@@ -352,7 +568,10 @@ public class QuizFragment extends Fragment {
         // get the number of guess buttons that should be displayed
         String choices =
                 sharedPreferences.getString(MainActivity.CHOICES, null);
-        this.guessRows = Integer.parseInt(choices) / 3;
+        this.guessRows = Integer.parseInt(choices) / QuizEngine.COLUMNS;
+        if (this.quizEngine != null) {
+            this.quizEngine.setChoices(this.guessRows * QuizEngine.COLUMNS);
+        }
 
         // hide all guess button LinearLayouts
         for (LinearLayout layout : this.guessLinearLayouts)
@@ -363,14 +582,91 @@ public class QuizFragment extends Fragment {
             this.guessLinearLayouts[row].setVisibility(View.VISIBLE);
     }
 
+    /**
+     * Update the number of flags per quiz based on value in SharedPreferences
+     *
+     * @param sharedPreferences Preferences
+     */
+    public void updateFlagsInQuiz(SharedPreferences sharedPreferences) {
+        // installs older than this setting have no stored value
+        String flags = sharedPreferences.getString(MainActivity.FLAGS,
+                String.valueOf(DEFAULT_FLAGS_IN_QUIZ));
+        this.flagsInQuizSetting = Integer.parseInt(flags); // 0 for all
+        if (this.quizEngine != null) {
+            this.quizEngine.setFlagsInQuiz(this.flagsInQuizSetting);
+        }
+    }
+
+    /**
+     * Update adaptive quizzes based on value in SharedPreferences
+     *
+     * @param sharedPreferences Preferences
+     */
+    public void updateAdaptive(SharedPreferences sharedPreferences) {
+        this.adaptive = sharedPreferences.getBoolean(MainActivity.ADAPTIVE, true);
+        if (this.quizEngine != null) {
+            this.quizEngine.setAdaptive(this.adaptive);
+        }
+    }
+
+    /**
+     * Update how alike the wrong answers look based on value in
+     * SharedPreferences
+     *
+     * @param sharedPreferences Preferences
+     */
+    public void updateDifficulty(SharedPreferences sharedPreferences) {
+        this.maxDistractorDistance = Integer.parseInt(sharedPreferences.getString(
+                MainActivity.DIFFICULTY, String.valueOf(DEFAULT_DIFFICULTY)));
+        if (this.quizEngine != null) {
+            this.setDistractorSimilarity();
+        }
+    }
+
+    // the similarity index is only loaded once lookalikes are wanted
+    private void setDistractorSimilarity() {
+        if (this.maxDistractorDistance < 0) {
+            this.quizEngine.setDistractorSimilarity(null, 0);
+        } else {
+            this.quizEngine.setDistractorSimilarity(
+                    FlagSimilarityLoader.getInstance(getActivity().getAssets()),
+                    this.maxDistractorDistance);
+        }
+    }
+
+    /**
+     * Update the timed mode and the question delay based on values in
+     * SharedPreferences
+     *
+     * @param sharedPreferences Preferences
+     */
+    public void updateTimed(SharedPreferences sharedPreferences) {
+        this.timed = sharedPreferences.getBoolean(MainActivity.TIMED, false);
+        this.questionDelay = Long.parseLong(sharedPreferences.getString(
+                MainActivity.QUESTION_DELAY, String.valueOf(DEFAULT_QUESTION_DELAY)));
+    }
+
     /**
      * Update world regions for quiz based on values in SharedPreferences
      *
      * @param sharedPreferences Preferences
      */
     public void updateRegions(SharedPreferences sharedPreferences) {
-        this.regionsSet =
-                sharedPreferences.getStringSet(MainActivity.REGIONS, null);
+        Set<String> regions = new HashSet<String>(
+                sharedPreferences.getStringSet(MainActivity.REGIONS, null));
+
+        // only add or drop the flags of the regions that changed
+        if (this.quizEngine != null) {
+            for (String region : this.regionsSet) {
+                if (!regions.contains(region))
+                    this.quizEngine.removeFlags(this.flagCatalog.getFlagIds(region));
+            }
+            for (String region : regions) {
+                if (!this.regionsSet.contains(region))
+                    this.quizEngine.addFlags(this.flagCatalog.getFlagIds(region));
+            }
+        }
+        this.regionsSet = regions;
     }
 
     /**
@@ -378,72 +674,205 @@ public class QuizFragment extends Fragment {
      */
     public void resetQuiz() {
 
+        if (this.flagCatalog == null) {
+            this.setupFlagCatalog();
+        }
         this.resetQuizAttributes();
-        this.loadQuizCountriesList();
+        this.memoryGovernor.recover();
+        this.quizTimer.reset();
+        this.quizEngine.startQuiz(this.nextQuizSeed()); // picks the flags
+        this.flagLoader.prefetch(this.quizEngine.getQuizFlags(),
+                0, this.quizEngine.getFlagsInQuiz()); // start decoding now
 
         this.loadNextFlag(); // start the quiz by loading the first flag
     }
 
     /**
-     * Load the countries list to current quiz
+     * Show the quiz in progress on new views, e.g. after a rotation,
+     * without decoding its flag again. After the process was killed the
+     * saved quiz is restored at the same question. If there is no quiz,
+     * or the settings changed so that it no longer fits, a new one starts.
      */
-    private void loadQuizCountriesList() {
-        this.loadFileNameList();
-        this.addRandomCountriesToList();
+    public void resumeQuiz() {
+        if (this.isQuizStarted()) {
+            // settings changed during the recreation may not fit the quiz
+            if (!this.quizEngine.restoreQuiz(this.quizEngine.saveQuiz())) {
+                this.resetQuiz();
+                return;
+            }
+        } else {
+            int[] state = this.savedQuizState;
+            this.savedQuizState = null;
+            if (state == null) {
+                this.resetQuiz();
+                return;
+            }
+            if (this.flagCatalog == null) {
+                this.setupFlagCatalog();
+            }
+            if (!this.quizEngine.restoreQuiz(state)) {
+                this.resetQuiz();
+                return;
+            }
+            this.flagLoader.prefetch(this.quizEngine.getQuizFlags(),
+                    this.quizEngine.getQuestion(), this.quizEngine.getFlagsInQuiz());
+        }
+        this.rebindQuiz();
     }
 
     /**
-     * Add random countries to list
+     * Show the current question as it was left: its flag, answers,
+     * guessed Buttons and message.
      */
-    private void addRandomCountriesToList() {
-        int flagCounter = 1;
-        int numberOfFlags = this.fileNameList.size();
-
-        // add FLAGS_IN_QUIZ random file names to the quizCountriesList
-        while (flagCounter <= FLAGS_IN_QUIZ) {
-            int randomIndex = this.random.nextInt(numberOfFlags);
-
-            // get the random file name
-            String fileName = this.fileNameList.get(randomIndex);
+    private void rebindQuiz() {
+        int flagId = this.obtainNextGuessAndSetAnswer();
+        if (this.shownFlag != null) {
+            this.flagImageView.setImageBitmap(this.shownFlag); // still retained
+        } else {
+            this.setupImageGuess(flagId); // restored, or still decoding
+        }
+        this.setupAnswersButtons();
 
-            // if the region is enabled and it hasn't already been chosen
-            if (!this.quizCountriesList.contains(fileName)) {
-                this.quizCountriesList.add(fileName); // add the file to the list
-                ++flagCounter;
+        if (this.quizEngine.isQuestionAnswered()) {
+            this.setupCorrectAnswerMessage(flagId);
+            this.disableButtons();
+            if (!this.allCorrectAnswers() && !this.nextQuestionPending) {
+                this.postNextQuestion(); // the delay was lost with the process
+            }
+        } else {
+            boolean guessed = false;
+            for (int row = 0; row < this.guessRows; row++) {
+                LinearLayout guessRow = this.guessLinearLayouts[row];
+                for (int column = 0; column < guessRow.getChildCount(); column++) {
+                    if (this.quizEngine.isGuessed((row * QuizEngine.COLUMNS) + column)) {
+                        guessRow.getChildAt(column).setEnabled(false);
+                        guessed = true;
+                    }
+                }
+            }
+            if (guessed) {
+                this.answerTextView.setText(R.string.incorrect_answer);
+                this.answerTextView.setTextColor(
+                        getResources().getColor(R.color.incorrect_answer));
             }
         }
     }
 
     /**
-     * Load the countries filename list
+     * @return true once the first quiz started
      */
-    private void loadFileNameList() {
-        // use AssetManager to get image file names for enabled regions
-        this.fileNameList.clear(); // empty list of image file names
-        AssetManager assets = getActivity().getAssets();
-        try {
-            // loop through each region
-            for (String region : this.regionsSet) {
-                // get a list of all flag image files in this region
-                String[] paths = assets.list(region);
+    private boolean isQuizStarted() {
+        return this.quizEngine != null && this.quizEngine.getFlagsInQuiz() > 0;
+    }
 
-                for (String path : paths)
-                    this.fileNameList.add(path.replace(".png", ""));
-            }
-        } catch (IOException exception) {
-            Log.e(TAG, "Error loading image file names", exception);
+    /**
+     * Replay a quiz: the next quiz uses this seed. With the same settings
+     * it has the same flags, wrong answers and correct Button positions.
+     *
+     * @param seed Seed logged when the quiz was played
+     */
+    public void replayQuiz(long seed) {
+        this.quizSeed = seed;
+        this.replayingSeed = true;
+    }
+
+    /**
+     * Pick and log the seed of the next quiz.
+     *
+     * @return Seed
+     */
+    private long nextQuizSeed() {
+        if (this.replayingSeed) {
+            this.replayingSeed = false;
+        } else {
+            this.quizSeed = this.seedSource.nextLong();
         }
+        Log.i(TAG, "Quiz seed: " + this.quizSeed);
+        return this.quizSeed;
+    }
 
+    /**
+     * Load the flag ids of the enabled regions from the catalog
+     */
+    private void loadFlagIdList() {
+        for (String region : this.regionsSet)
+            this.quizEngine.addFlags(this.flagCatalog.getFlagIds(region));
     }
 
     /**
      * Set up initials values of quiz attributes.
      */
     private void resetQuizAttributes() {
+        this.handler.removeCallbacks(this.nextQuestionTask);
+        this.nextQuestionPending = false;
+        this.correctAnswerNanos = 0;
+        this.flagLoader.clear(); // drop flags decoded for the prior quiz
+    }
 
-        this.correctAnswers = 0; // reset the number of correct answers made
-        this.totalGuesses = 0; // reset the total number of guesses the user made
-        this.quizCountriesList.clear(); // clear prior list of quiz countries
+    /**
+     * Shows the quiz stats and starts a new quiz. Static, so the system
+     * can recreate it after a configuration change.
+     */
+    public static class QuizResultsDialog extends DialogFragment {
+        private static final String TOTAL_GUESSES = "totalGuesses";
+        private static final String PERCENTAGE = "percentage";
+        private static final String TIMES = "times"; // total, percentiles, max
+
+        /**
+         * @param totalGuesses Guesses made in the quiz
+         * @param percentage   Correct guesses per guess, in percent
+         * @param timer        Reaction times to show, or null
+         * @return Dialog to show
+         */
+        public static QuizResultsDialog newInstance(int totalGuesses,
+                                                    double percentage,
+                                                    QuizTimer timer) {
+            Bundle arguments = new Bundle();
+            arguments.putInt(TOTAL_GUESSES, totalGuesses);
+            arguments.putDouble(PERCENTAGE, percentage);
+            if (timer != null && timer.getQuestionCount() > 0) {
+                long[] percentiles = timer.getPercentiles(RESULT_PERCENTILES);
+                arguments.putLongArray(TIMES, new long[]{timer.getTotalMicros(),
+                        percentiles[0], percentiles[1], timer.getMaxMicros()});
+            }
+            QuizResultsDialog dialog = new QuizResultsDialog();
+            dialog.setArguments(arguments);
+            return dialog;
+        }
+
+        // create an AlertDialog and return it
+        @Override
+        public Dialog onCreateDialog(Bundle bundle) {
+            AlertDialog.Builder builder =
+                    new AlertDialog.Builder(getActivity());
+            builder.setCancelable(false);
+
+            String message = getResources().getString(R.string.results,
+                    getArguments().getInt(TOTAL_GUESSES),
+                    getArguments().getDouble(PERCENTAGE));
+            long[] times = getArguments().getLongArray(TIMES);
+            if (times != null) {
+                // microseconds, shown in seconds
+                message += "\n" + getResources().getString(R.string.timed_results,
+                        times[0] / 1e6, times[1] / 1e6, times[2] / 1e6, times[3] / 1e6);
+            }
+            builder.setMessage(message);
+
+            // "Reset Quiz" Button
+            builder.setPositiveButton(R.string.reset_quiz,
+                    new DialogInterface.OnClickListener() {
+                        public void onClick(DialogInterface dialog,
+                                            int id) {
+                            FragmentManager fragmentManager = getFragmentManager();
+                            QuizFragment quizFragment = (QuizFragment)
+                                    fragmentManager.findFragmentById(R.id.quizFragment);
+                            quizFragment.resetQuiz();
+                        }
+                    } // end anonymous inner class
+            ); // end call to setPositiveButton
+
+            return builder.create(); // return the AlertDialog
+        } // end method onCreateDialog
     }
 
 }
@@ -0,0 +1,426 @@
+// QuizHistory.java
+// SQLite store of every guess, written in batches off the main thread
+package com.hektor7.flagquiz;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Records every guess with its flag, answer, correctness and latency.
+ * Guesses are queued on the main thread and inserted in one
+ * transaction per batch on a background thread, once BATCH_SIZE are
+ * queued, FLUSH_DELAY after the first one, or on flush(). Queries run
+ * on the same thread, after the pending writes, and answer on the
+ * main thread. Flags are stored by file name (e.g. Europe-Bosnia), so
+ * the history survives changes to the flag ids.
+ */
+public class QuizHistory extends SQLiteOpenHelper {
+    // String used when logging error messages
+    private static final String TAG = "FlagQuiz History";
+
+    private static final String DATABASE_NAME = "history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_GUESSES = "guesses";
+    private static final String COLUMN_TIME = "time"; // ms since the epoch
+    private static final String COLUMN_QUIZ_SEED = "quiz_seed";
+    private static final String COLUMN_FLAG = "flag"; // flag shown
+    private static final String COLUMN_ANSWER = "answer"; // flag guessed
+    private static final String COLUMN_CORRECT = "correct"; // 1 or 0
+    private static final String COLUMN_LATENCY = "latency_ms"; // since the flag was shown
+
+    private static final int BATCH_SIZE = 20; // guesses per transaction
+    private static final long FLUSH_DELAY = 5000; // ms a guess may wait
+
+    private static final int DUMP_FLAGS = 10; // worst flags printed by dump
+    private static final long DUMP_TIMEOUT = 2000; // ms dump waits for its query
+
+    /**
+     * Receives the statistics of every flag guessed so far.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread.
+         *
+         * @param statistics Statistics by flag, worst accuracy first
+         */
+        void onFlagStatistics(List<FlagStatistics> statistics);
+    }
+
+    /**
+     * Receives a scheduler built from the recorded guesses.
+     */
+    public interface SchedulerCallback {
+        /**
+         * Called on the main thread.
+         *
+         * @param scheduler Scheduler with every flag disabled
+         */
+        void onSchedulerLoaded(FlagScheduler scheduler);
+    }
+
+    /**
+     * Accuracy and response time of one flag.
+     */
+    public static class FlagStatistics {
+        public final String flag; // file name, e.g. Europe-Bosnia
+        public final int guesses; // guesses while it was shown
+        public final int correctGuesses;
+        public final double averageLatency; // ms, over every guess
+
+        FlagStatistics(String flag, int guesses, int correctGuesses,
+                       double averageLatency) {
+            this.flag = flag;
+            this.guesses = guesses;
+            this.correctGuesses = correctGuesses;
+            this.averageLatency = averageLatency;
+        }
+
+        /**
+         * @return Correct guesses per guess, from 0 to 1
+         */
+        public double getAccuracy() {
+            return this.correctGuesses / (double) this.guesses;
+        }
+    }
+
+    // one recorded guess, waiting to be written
+    private static class Guess {
+        final long time;
+        final long quizSeed;
+        final String flag;
+        final String answer;
+        final boolean correct;
+        final long latency;
+
+        Guess(long time, long quizSeed, String flag, String answer,
+              boolean correct, long latency) {
+            this.time = time;
+            this.quizSeed = quizSeed;
+            this.flag = flag;
+            this.answer = answer;
+            this.correct = correct;
+            this.latency = latency;
+        }
+    }
+
+    private final ExecutorService executor; // writes and queries in order
+    private final Handler handler; // schedules flushes, delivers queries
+    private List<Guess> pendingGuesses; // queued on the main thread
+    private boolean flushScheduled; // a delayed flush is posted
+    // per scheduler being loaded, the guesses its replay can't see
+    private final List<List<Guess>> loadingGuesses = new ArrayList<List<Guess>>();
+
+    /**
+     * @param context Context, the application's is kept
+     */
+    public QuizHistory(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    // name is null for an in-memory database, in tests
+    QuizHistory(Context context, String name) {
+        super(context.getApplicationContext(), name, null, DATABASE_VERSION);
+        this.executor = Executors.newSingleThreadExecutor();
+        this.handler = new Handler(Looper.getMainLooper());
+        this.pendingGuesses = new ArrayList<Guess>();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_GUESSES + " ("
+                + "_id INTEGER PRIMARY KEY, "
+                + COLUMN_TIME + " INTEGER NOT NULL, "
+                + COLUMN_QUIZ_SEED + " INTEGER NOT NULL, "
+                + COLUMN_FLAG + " TEXT NOT NULL, "
+                + COLUMN_ANSWER + " TEXT NOT NULL, "
+                + COLUMN_CORRECT + " INTEGER NOT NULL, "
+                + COLUMN_LATENCY + " INTEGER NOT NULL)");
+        // covers the per-flag queries, so they never read the table
+        db.execSQL("CREATE INDEX " + TABLE_GUESSES + "_flag ON " + TABLE_GUESSES
+                + " (" + COLUMN_FLAG + ", " + COLUMN_CORRECT + ", " + COLUMN_LATENCY + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // no older versions yet
+    }
+
+    /**
+     * Queue a guess. Must be called from the main thread.
+     *
+     * @param quizSeed Seed of the quiz
+     * @param flag     File name of the flag shown
+     * @param answer   File name of the flag guessed
+     * @param correct  true if the guess was correct
+     * @param latency  Milliseconds since the flag was shown
+     */
+    public void record(long quizSeed, String flag, String answer,
+                       boolean correct, long latency) {
+        Guess guess = new Guess(System.currentTimeMillis(),
+                quizSeed, flag, answer, correct, latency);
+        this.pendingGuesses.add(guess);
+        for (List<Guess> guesses : this.loadingGuesses)
+            guesses.add(guess);
+
+        if (this.pendingGuesses.size() >= BATCH_SIZE) {
+            this.flush();
+        } else if (!this.flushScheduled) {
+            this.flushScheduled = true;
+            this.handler.postDelayed(this.delayedFlush, FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * Write the queued guesses now, e.g. when the quiz is paused.
+     * Must be called from the main thread.
+     */
+    public void flush() {
+        this.handler.removeCallbacks(this.delayedFlush);
+        this.flushScheduled = false;
+        if (this.pendingGuesses.isEmpty()) {
+            return;
+        }
+
+        final List<Guess> guesses = this.pendingGuesses;
+        this.pendingGuesses = new ArrayList<Guess>();
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                insert(guesses);
+            }
+        });
+    }
+
+    // flushes the guesses that waited FLUSH_DELAY
+    private final Runnable delayedFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Query the accuracy and average response time of every flag
+     * guessed so far, once the queued guesses are written.
+     *
+     * @param callback Receives the statistics on the main thread
+     */
+    public void queryFlagStatistics(final Callback callback) {
+        this.flush();
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<FlagStatistics> statistics = queryFlagStatistics();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFlagStatistics(statistics);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Print the number of flags guessed and the ones with the worst
+     * accuracy, once the queued guesses are written. Must be called
+     * from the main thread; waits for the query at most DUMP_TIMEOUT.
+     *
+     * @param prefix Prefix of every line
+     * @param writer Destination, e.g. the one of Fragment.dump
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        if (this.executor.isShutdown()) {
+            writer.println(prefix + "QuizHistory: closed");
+            return;
+        }
+        this.flush();
+        Future<List<FlagStatistics>> query = this.executor.submit(
+                new Callable<List<FlagStatistics>>() {
+                    @Override
+                    public List<FlagStatistics> call() {
+                        return queryFlagStatistics();
+                    }
+                });
+        List<FlagStatistics> statistics;
+        try {
+            statistics = query.get(DUMP_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException exception) {
+            writer.println(prefix + "QuizHistory: " + exception.getCause());
+            return;
+        } catch (TimeoutException exception) {
+            writer.println(prefix + "QuizHistory: busy, no statistics within "
+                    + DUMP_TIMEOUT + " ms");
+            return;
+        }
+
+        writer.println(prefix + "QuizHistory: flags=" + statistics.size());
+        for (FlagStatistics flag : statistics.subList(0,
+                Math.min(DUMP_FLAGS, statistics.size()))) {
+            writer.println(prefix + "  " + flag.flag
+                    + " accuracy=" + Math.round(flag.getAccuracy() * 100) + "%"
+                    + " guesses=" + flag.guesses
+                    + " latency=" + Math.round(flag.averageLatency) + "ms");
+        }
+    }
+
+    /**
+     * Build a flag scheduler by replaying every recorded guess, once
+     * the queued guesses are written. Guesses recorded while it loads
+     * are replayed too, just before it is delivered, so that none is
+     * lost. Flags no longer in the catalog are skipped. Must be called
+     * from the main thread.
+     *
+     * @param catalog  Flag catalog
+     * @param callback Receives the scheduler on the main thread
+     */
+    public void loadScheduler(final FlagCatalog catalog,
+                              final SchedulerCallback callback) {
+        this.flush();
+        final List<Guess> guessesWhileLoading = new ArrayList<Guess>();
+        this.loadingGuesses.add(guessesWhileLoading);
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Map<String, Integer> flagIds = mapFlagIds(catalog);
+                final FlagScheduler scheduler = replayGuesses(flagIds, catalog.size());
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // recorded after the replay's query was queued
+                        loadingGuesses.remove(guessesWhileLoading);
+                        for (Guess guess : guessesWhileLoading)
+                            replayGuess(scheduler, flagIds, guess.flag, guess.correct);
+                        callback.onSchedulerLoaded(scheduler);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Write the queued guesses and close the database. The history
+     * can't be used afterwards.
+     */
+    @Override
+    public void close() {
+        this.flush();
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                QuizHistory.super.close();
+            }
+        });
+        this.executor.shutdown();
+    }
+
+    // runs on the executor
+    private void insert(List<Guess> guesses) {
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_GUESSES
+                    + " (" + COLUMN_TIME + ", " + COLUMN_QUIZ_SEED + ", " + COLUMN_FLAG
+                    + ", " + COLUMN_ANSWER + ", " + COLUMN_CORRECT + ", " + COLUMN_LATENCY
+                    + ") VALUES (?, ?, ?, ?, ?, ?)");
+            db.beginTransaction();
+            try {
+                for (Guess guess : guesses) {
+                    insert.bindLong(1, guess.time);
+                    insert.bindLong(2, guess.quizSeed);
+                    insert.bindString(3, guess.flag);
+                    insert.bindString(4, guess.answer);
+                    insert.bindLong(5, guess.correct ? 1 : 0);
+                    insert.bindLong(6, guess.latency);
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insert.close();
+            }
+        } catch (RuntimeException exception) {
+            // the history is best effort, the quiz goes on without it
+            Log.e(TAG, "Error writing " + guesses.size() + " guesses", exception);
+        }
+    }
+
+    // flag id of each file name of the catalog
+    private static Map<String, Integer> mapFlagIds(FlagCatalog catalog) {
+        Map<String, Integer> flagIds = new HashMap<String, Integer>();
+        for (int flagId = 0; flagId < catalog.size(); flagId++)
+            flagIds.put(catalog.getFileName(flagId), flagId);
+        return flagIds;
+    }
+
+    private static void replayGuess(FlagScheduler scheduler, Map<String, Integer> flagIds,
+                                    String flag, boolean correct) {
+        Integer flagId = flagIds.get(flag);
+        if (flagId != null) {
+            scheduler.recordGuess(flagId, correct);
+        }
+    }
+
+    // runs on the executor
+    private FlagScheduler replayGuesses(Map<String, Integer> flagIds, int capacity) {
+        FlagScheduler scheduler = new FlagScheduler(capacity);
+        try {
+            Cursor cursor = this.getReadableDatabase().rawQuery("SELECT " + COLUMN_FLAG
+                    + ", " + COLUMN_CORRECT + " FROM " + TABLE_GUESSES
+                    + " ORDER BY _id", null);
+            try {
+                while (cursor.moveToNext())
+                    replayGuess(scheduler, flagIds, cursor.getString(0), cursor.getInt(1) != 0);
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException exception) {
+            Log.e(TAG, "Error replaying the guesses", exception);
+        }
+        return scheduler;
+    }
+
+    // runs on the executor
+    private List<FlagStatistics> queryFlagStatistics() {
+        List<FlagStatistics> statistics = new ArrayList<FlagStatistics>();
+        try {
+            Cursor cursor = this.getReadableDatabase().rawQuery("SELECT " + COLUMN_FLAG
+                    + ", COUNT(*), SUM(" + COLUMN_CORRECT + "), AVG(" + COLUMN_LATENCY
+                    + ") FROM " + TABLE_GUESSES + " GROUP BY " + COLUMN_FLAG
+                    + " ORDER BY SUM(" + COLUMN_CORRECT + ") * 1.0 / COUNT(*)", null);
+            try {
+                while (cursor.moveToNext()) {
+                    statistics.add(new FlagStatistics(cursor.getString(0),
+                            cursor.getInt(1), cursor.getInt(2), cursor.getDouble(3)));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException exception) {
+            Log.e(TAG, "Error reading the flag statistics", exception);
+        }
+        return statistics;
+    }
+}
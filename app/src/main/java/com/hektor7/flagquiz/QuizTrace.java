@@ -0,0 +1,176 @@
+// QuizTrace.java
+// Debug-only timing of the quiz phases and of the frames they draw
+package com.hektor7.flagquiz;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+import android.view.Choreographer;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Times the quiz phases as systrace sections (API 18+) and in latency
+ * histograms, and records frame durations (API 16+) while a question
+ * changes or a flag shakes. Only the main thread may use it.
+ * Report it with: adb shell dumpsys activity com.hektor7.flagquiz
+ * ENABLED is a constant, so release builds compile every call to nothing.
+ */
+public final class QuizTrace {
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+
+    // phases, in microseconds
+    public static final String LOAD_NEXT_FLAG = "loadNextFlag";
+    public static final String SETUP_ANSWERS_BUTTONS = "setupAnswersButtons";
+    public static final String QUESTION = "question"; // correct answer to next flag shown
+    public static final String SHAKE_ANIMATION = "shakeAnimation";
+
+    // frames drawn after a question changes or a flag starts shaking
+    public static final int TRANSITION_FRAMES = 60;
+
+    // a frame longer than this missed at least one vsync at 60 Hz
+    private static final long JANK_FRAME_MICROS = 16667 * 3 / 2;
+
+    private static final Map<String, LatencyHistogram> phases =
+            new LinkedHashMap<String, LatencyHistogram>();
+    private static final LatencyHistogram frames = new LatencyHistogram();
+    private static long jankFrames; // frames longer than JANK_FRAME_MICROS
+    private static FrameMonitor frameMonitor; // created on first use
+
+    private QuizTrace() {
+    }
+
+    /**
+     * Begin a phase.
+     *
+     * @param phase Phase name
+     * @return Start time to pass to endSection, 0 when disabled
+     */
+    public static long beginSection(String phase) {
+        if (!ENABLED) {
+            return 0;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            beginTraceSection(phase);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * End the phase begun last and record how long it took.
+     *
+     * @param phase      Phase name
+     * @param startNanos Value returned by beginSection
+     */
+    public static void endSection(String phase, long startNanos) {
+        if (!ENABLED) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            endTraceSection();
+        }
+        record(phase, startNanos);
+    }
+
+    /**
+     * Record how long a phase took that spans several callbacks, so it
+     * can't be a trace section, e.g. until the flag is decoded and shown.
+     *
+     * @param phase      Phase name
+     * @param startNanos System.nanoTime() when the phase began
+     */
+    public static void record(String phase, long startNanos) {
+        if (!ENABLED) {
+            return;
+        }
+        LatencyHistogram histogram = phases.get(phase);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            phases.put(phase, histogram);
+        }
+        histogram.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * @return System.nanoTime(), or 0 when disabled
+     */
+    public static long now() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the duration of the next frames.
+     *
+     * @param count Number of frames
+     */
+    public static void watchFrames(int count) {
+        if (ENABLED && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (frameMonitor == null) {
+                frameMonitor = new FrameMonitor();
+            }
+            frameMonitor.watch(count);
+        }
+    }
+
+    /**
+     * Print p50/p95/p99 of every phase and of the frame durations.
+     *
+     * @param prefix Prefix of each line
+     * @param writer Destination, e.g. the one of Activity.dump
+     */
+    public static void dump(String prefix, PrintWriter writer) {
+        if (!ENABLED) {
+            return;
+        }
+        writer.println(prefix + "QuizTrace (us):");
+        for (Map.Entry<String, LatencyHistogram> phase : phases.entrySet())
+            writer.println(prefix + "  " + phase.getKey() + ": " + phase.getValue());
+        writer.println(prefix + "  frames: " + frames + " jank=" + jankFrames);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginTraceSection(String phase) {
+        Trace.beginSection(phase);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endTraceSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * Records the time between consecutive frames while it is watching.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameMonitor implements Choreographer.FrameCallback {
+        private int remainingFrames; // frames still to record
+        private long lastFrameNanos; // 0 when not watching
+
+        void watch(int count) {
+            if (this.remainingFrames == 0) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+            this.remainingFrames = Math.max(this.remainingFrames, count);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (this.lastFrameNanos != 0) {
+                long micros = (frameTimeNanos - this.lastFrameNanos) / 1000;
+                frames.record(micros);
+                if (micros > JANK_FRAME_MICROS) {
+                    ++jankFrames;
+                }
+                --this.remainingFrames;
+            }
+            if (this.remainingFrames > 0) {
+                this.lastFrameNanos = frameTimeNanos;
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                this.lastFrameNanos = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+// StartupProfiler.java
+// Timing markers for the cold start, up to the first flag on screen
+package com.hektor7.flagquiz;
+
+import android.util.Log;
+
+/**
+ * Logs how long each startup phase takes, e.g.
+ * "preferences: +4 ms (12 ms)", and finally the time to first flag
+ * against TARGET_TIME_TO_FIRST_FLAG_MS. Filter logcat by
+ * "FlagQuiz Startup" to track it between releases.
+ */
+public final class StartupProfiler {
+    // String used when logging the startup phases
+    private static final String TAG = "FlagQuiz Startup";
+
+    // time from MainActivity.onCreate to the first flag on screen
+    public static final long TARGET_TIME_TO_FIRST_FLAG_MS = 400;
+
+    private static long startNanos; // when the startup began
+    private static long lastMarkNanos; // when the previous phase ended
+    private static boolean running; // until the first flag is shown
+
+    private StartupProfiler() {
+    }
+
+    /**
+     * Start timing the cold start. Only the first call in the process
+     * counts, so recreated activities are not timed.
+     */
+    public static synchronized void start() {
+        if (startNanos == 0) {
+            startNanos = System.nanoTime();
+            lastMarkNanos = startNanos;
+            running = true;
+        }
+    }
+
+    /**
+     * Log the end of a startup phase.
+     *
+     * @param phase Phase that just ended
+     */
+    public static synchronized void mark(String phase) {
+        if (running) {
+            long now = System.nanoTime();
+            Log.i(TAG, phase + ": +" + toMillis(now - lastMarkNanos)
+                    + " ms (" + toMillis(now - startNanos) + " ms)");
+            lastMarkNanos = now;
+        }
+    }
+
+    /**
+     * Log the time to first flag and stop timing.
+     */
+    public static synchronized void firstFlagShown() {
+        if (running) {
+            long elapsed = toMillis(System.nanoTime() - startNanos);
+            String message = "Time to first flag: " + elapsed
+                    + " ms (target " + TARGET_TIME_TO_FIRST_FLAG_MS + " ms)";
+            if (elapsed > TARGET_TIME_TO_FIRST_FLAG_MS) {
+                Log.w(TAG, message);
+            } else {
+                Log.i(TAG, message);
+            }
+            running = false;
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1000000;
+    }
+}
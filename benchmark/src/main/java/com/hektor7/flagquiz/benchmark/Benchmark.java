@@ -0,0 +1,23 @@
+// Benchmark.java
+// One measured operation of the quiz engine
+package com.hektor7.flagquiz.benchmark;
+
+public abstract class Benchmark {
+    private final String name; // e.g. distractors.sampleExcluding.8
+
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Run the operation repeatedly.
+     *
+     * @param repetitions Times to run the operation
+     * @return Value derived from the results, so the JIT can't drop them
+     */
+    public abstract long run(int repetitions);
+}
@@ -0,0 +1,131 @@
+// BenchmarkRunner.java
+// Runs the JVM benchmarks and saves the results as a JSON baseline
+package com.hektor7.flagquiz.benchmark;
+
+import com.hektor7.flagquiz.FlagCatalog;
+import com.hektor7.flagquiz.FlagSimilarity;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public final class BenchmarkRunner {
+    private static final long WARMUP_NANOS = 1000000000L; // 1 s
+    private static final long SAMPLE_NANOS = 100000000L; // 100 ms
+    private static final int SAMPLES = 15;
+
+    private static long sink; // keeps the results alive
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * @param args Catalog file (flags.idx), with flags.sim next to it,
+     *             and JSON file to write
+     * @throws IOException If the catalog can't be read or results written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BenchmarkRunner <flags.idx> <results.json>");
+            System.exit(1);
+        }
+        File catalogFile = new File(args[0]).getAbsoluteFile();
+        byte[] catalogBytes = readFile(catalogFile);
+        FlagSimilarity similarity = readSimilarity(
+                new File(catalogFile.getParentFile(), FlagSimilarity.SIMILARITY_FILE));
+        List<Benchmark> benchmarks = QuizBenchmarks.create(catalogBytes, similarity);
+        benchmarks.addAll(WireBenchmarks.create());
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"unit\": \"ns/op\",\n  \"benchmarks\": [\n");
+        for (int i = 0; i < benchmarks.size(); i++) {
+            Benchmark benchmark = benchmarks.get(i);
+            double[] samples = measure(benchmark);
+            double median = samples[samples.length / 2];
+            double min = samples[0];
+            System.out.println(String.format(Locale.US, "%-45s %12.1f ns/op (min %.1f)",
+                    benchmark.getName(), median, min));
+
+            json.append(String.format(Locale.US,
+                    "    {\"name\": \"%s\", \"median\": %.1f, \"min\": %.1f}",
+                    benchmark.getName(), median, min));
+            json.append(i < benchmarks.size() - 1 ? ",\n" : "\n");
+        }
+        json.append("  ]\n}\n");
+        System.out.println(WireBenchmarks.describeSizes());
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(args[1]), "UTF-8");
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+        System.out.println("Results written to " + args[1] + " (" + sink + ")");
+    }
+
+    /**
+     * Warm the benchmark up, then time SAMPLES runs of about SAMPLE_NANOS.
+     *
+     * @param benchmark Benchmark
+     * @return Nanoseconds per operation of each sample, sorted
+     */
+    private static double[] measure(Benchmark benchmark) {
+        // find a repetition count that runs for about SAMPLE_NANOS
+        int repetitions = 1;
+        long start = System.nanoTime();
+        long elapsed;
+        while ((elapsed = time(benchmark, repetitions)) < SAMPLE_NANOS
+                || System.nanoTime() - start < WARMUP_NANOS) {
+            if (elapsed < SAMPLE_NANOS && repetitions < Integer.MAX_VALUE / 2)
+                repetitions *= 2;
+        }
+
+        double[] samples = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++)
+            samples[i] = time(benchmark, repetitions) / (double) repetitions;
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private static long time(Benchmark benchmark, int repetitions) {
+        long start = System.nanoTime();
+        sink += benchmark.run(repetitions);
+        return System.nanoTime() - start;
+    }
+
+    private static FlagSimilarity readSimilarity(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return FlagSimilarity.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0)
+                    throw new IOException("Unexpected end of " + file);
+                read += count;
+            }
+        } finally {
+            in.close();
+        }
+        // fail early on a bad catalog
+        FlagCatalog.read(new ByteArrayInputStream(bytes));
+        return bytes;
+    }
+}
@@ -0,0 +1,287 @@
+// QuizBenchmarks.java
+// Benchmarks of flag loading, quiz selection and answer selection,
+// next to the algorithms QuizFragment used before, for comparison
+package com.hektor7.flagquiz.benchmark;
+
+import com.hektor7.flagquiz.CountryNameTable;
+import com.hektor7.flagquiz.FlagCatalog;
+import com.hektor7.flagquiz.FlagPool;
+import com.hektor7.flagquiz.FlagScheduler;
+import com.hektor7.flagquiz.FlagSimilarity;
+import com.hektor7.flagquiz.QuizEngine;
+import com.hektor7.flagquiz.QuizRandom;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public final class QuizBenchmarks {
+    private static final int FLAGS_IN_QUIZ = 10;
+    private static final String[] REGIONS = {"Africa", "Asia", "Europe",
+            "North_America", "Oceania", "South_America"};
+
+    private QuizBenchmarks() {
+    }
+
+    /**
+     * @param catalogBytes Contents of flags.idx
+     * @param similarity   Similarity index of the catalog, flags.sim
+     * @return Every JVM benchmark
+     * @throws IOException If the catalog can't be read
+     */
+    public static List<Benchmark> create(final byte[] catalogBytes,
+                                         final FlagSimilarity similarity) throws IOException {
+        final FlagCatalog catalog = FlagCatalog.read(new ByteArrayInputStream(catalogBytes));
+        final FlagPool pool = new FlagPool(catalog.size());
+        for (String region : REGIONS)
+            pool.addAll(catalog.getFlagIds(region));
+        final List<Integer> flagIdList = new ArrayList<Integer>();
+        for (int i = 0; i < pool.size(); i++)
+            flagIdList.add(pool.get(i));
+        final int[] out = new int[catalog.size()];
+        final Random random = new QuizRandom(42);
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+        // loading the flags of the enabled regions
+        benchmarks.add(new Benchmark("catalog.read") {
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                try {
+                    for (int i = 0; i < repetitions; i++)
+                        result += FlagCatalog.read(
+                                new ByteArrayInputStream(catalogBytes)).size();
+                } catch (IOException exception) {
+                    throw new IllegalStateException(exception);
+                }
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("pool.loadAllRegions") {
+            @Override
+            public long run(int repetitions) {
+                FlagPool regionsPool = new FlagPool(catalog.size());
+                for (int i = 0; i < repetitions; i++) {
+                    regionsPool.clear();
+                    for (String region : REGIONS)
+                        regionsPool.addAll(catalog.getFlagIds(region));
+                }
+                return regionsPool.size();
+            }
+        });
+        benchmarks.add(new Benchmark("names.catalogLookup") {
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                for (int i = 0; i < repetitions; i++)
+                    result += catalog.getName(i % catalog.size()).length();
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("names.legacyFileNameParsing") {
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                for (int i = 0; i < repetitions; i++)
+                    result += getCountryName(catalog.getFileName(i % catalog.size())).length();
+                return result;
+            }
+        });
+
+        final CountryNameTable names = CountryNameTable.fromCatalog(catalog);
+        benchmarks.add(new Benchmark("names.correctMessage.table") {
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                for (int i = 0; i < repetitions; i++)
+                    result += names.getCorrectMessage(i % names.size()).length();
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("names.correctMessage.concat") {
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                for (int i = 0; i < repetitions; i++)
+                    result += (catalog.getName(i % catalog.size()) + "!").length();
+                return result;
+            }
+        });
+
+        // choosing the flags of a quiz
+        benchmarks.add(new Benchmark("quizFlags.partialFisherYates.10") {
+            @Override
+            public long run(int repetitions) {
+                for (int i = 0; i < repetitions; i++)
+                    pool.sample(random, FLAGS_IN_QUIZ, out);
+                return out[0];
+            }
+        });
+        benchmarks.add(new Benchmark("quizFlags.partialFisherYates.all") {
+            @Override
+            public long run(int repetitions) {
+                for (int i = 0; i < repetitions; i++)
+                    pool.sample(random, pool.size(), out);
+                return out[0];
+            }
+        });
+        benchmarks.add(new Benchmark("quizFlags.legacyRejection.10") {
+            @Override
+            public long run(int repetitions) {
+                List<Integer> quizList = new ArrayList<Integer>();
+                for (int i = 0; i < repetitions; i++) {
+                    quizList.clear();
+                    addRandomCountriesToList(random, flagIdList, quizList, FLAGS_IN_QUIZ);
+                }
+                return quizList.get(0);
+            }
+        });
+        benchmarks.add(new Benchmark("quizFlags.legacyRejection.all") {
+            @Override
+            public long run(int repetitions) {
+                List<Integer> quizList = new ArrayList<Integer>();
+                for (int i = 0; i < repetitions; i++) {
+                    quizList.clear();
+                    addRandomCountriesToList(random, flagIdList, quizList, flagIdList.size());
+                }
+                return quizList.get(0);
+            }
+        });
+
+        // choosing the answers of a question
+        for (final int choices : new int[]{3, 6, 9}) {
+            benchmarks.add(new Benchmark("answers.sampleExcluding." + choices) {
+                @Override
+                public long run(int repetitions) {
+                    for (int i = 0; i < repetitions; i++)
+                        pool.sampleExcluding(random, i % catalog.size(), choices - 1, out);
+                    return out[0];
+                }
+            });
+        }
+        benchmarks.add(new Benchmark("answers.lookalikes.9") {
+            // the hard difficulty: any of the nearest flags
+            private final QuizEngine engine = createEngine(catalog, 9);
+
+            {
+                this.engine.setDistractorSimilarity(similarity, FlagSimilarity.MAX_DISTANCE);
+                this.engine.startQuiz(42);
+            }
+
+            @Override
+            public long run(int repetitions) {
+                for (int i = 0; i < repetitions; i++)
+                    this.engine.nextQuestion(); // same flag, new answers
+                return this.engine.getAnswer(0);
+            }
+        });
+        benchmarks.add(new Benchmark("answers.legacyShuffle.9") {
+            @Override
+            public long run(int repetitions) {
+                for (int i = 0; i < repetitions; i++) {
+                    Collections.shuffle(flagIdList, random);
+                    int correct = flagIdList.indexOf(i % catalog.size());
+                    flagIdList.add(flagIdList.remove(correct));
+                }
+                return flagIdList.get(0);
+            }
+        });
+
+        // spaced repetition
+        final FlagScheduler scheduler = new FlagScheduler(catalog.size());
+        for (String region : REGIONS)
+            scheduler.enable(catalog.getFlagIds(region));
+        benchmarks.add(new Benchmark("scheduler.sample.10") {
+            @Override
+            public long run(int repetitions) {
+                for (int i = 0; i < repetitions; i++)
+                    scheduler.sample(random, FLAGS_IN_QUIZ, out);
+                return out[0];
+            }
+        });
+        benchmarks.add(new Benchmark("scheduler.recordGuess") {
+            @Override
+            public long run(int repetitions) {
+                for (int i = 0; i < repetitions; i++)
+                    scheduler.recordGuess(i % catalog.size(), (i & 3) != 0);
+                return scheduler.getBox(0);
+            }
+        });
+
+        // whole quizzes, as QuizFragment plays them
+        for (final int choices : new int[]{3, 9}) {
+            benchmarks.add(new Benchmark("engine.fullQuiz." + choices) {
+                private final QuizEngine engine = createEngine(catalog, choices);
+
+                @Override
+                public long run(int repetitions) {
+                    for (int i = 0; i < repetitions; i++)
+                        QuizSimulation.play(this.engine, i);
+                    return this.engine.getTotalGuesses();
+                }
+            });
+        }
+
+        // random sources
+        benchmarks.add(new Benchmark("random.quizRandom.nextInt") {
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                for (int i = 0; i < repetitions; i++)
+                    result += random.nextInt(catalog.size());
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("random.secureRandom.nextInt") {
+            private final Random secureRandom = new SecureRandom();
+
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                for (int i = 0; i < repetitions; i++)
+                    result += this.secureRandom.nextInt(catalog.size());
+                return result;
+            }
+        });
+        return benchmarks;
+    }
+
+    /**
+     * @param catalog Flag catalog
+     * @param choices Answers per question
+     * @return Engine with every region and FLAGS_IN_QUIZ flags per quiz
+     */
+    static QuizEngine createEngine(FlagCatalog catalog, int choices) {
+        QuizEngine engine = new QuizEngine(catalog.size(), new QuizRandom());
+        for (String region : REGIONS)
+            engine.addFlags(catalog.getFlagIds(region));
+        engine.setChoices(choices);
+        engine.setFlagsInQuiz(FLAGS_IN_QUIZ);
+        return engine;
+    }
+
+    // QuizFragment.getCountryName before the flag catalog
+    private static String getCountryName(String name) {
+        return name.substring(name.indexOf('-') + 1).replace('_', ' ');
+    }
+
+    // QuizFragment.addRandomCountriesToList before FlagPool
+    private static void addRandomCountriesToList(Random random, List<Integer> fileNameList,
+                                                 List<Integer> quizCountriesList, int flags) {
+        int flagCounter = 1;
+        int numberOfFlags = fileNameList.size();
+        while (flagCounter <= flags) {
+            int randomIndex = random.nextInt(numberOfFlags);
+            Integer fileName = fileNameList.get(randomIndex);
+            if (!quizCountriesList.contains(fileName)) {
+                quizCountriesList.add(fileName);
+                ++flagCounter;
+            }
+        }
+    }
+}
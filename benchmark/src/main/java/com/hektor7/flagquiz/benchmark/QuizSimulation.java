@@ -0,0 +1,110 @@
+// QuizSimulation.java
+// Plays quizzes headless to measure throughput and check they are fair
+package com.hektor7.flagquiz.benchmark;
+
+import com.hektor7.flagquiz.FlagCatalog;
+import com.hektor7.flagquiz.QuizEngine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Plays quizzes with a player that tries the answers in order, and
+ * reports quizzes per second, how often the correct answer is on each
+ * Button and how often each flag is asked. In a fair quiz both are
+ * uniform, so their chi-square statistics stay near the degrees of
+ * freedom.
+ */
+public final class QuizSimulation {
+    private static final int DEFAULT_QUIZZES = 1000000;
+    private static final int CHOICES = QuizEngine.MAX_CHOICES;
+
+    private QuizSimulation() {
+    }
+
+    /**
+     * @param args Catalog file (flags.idx) and optionally the number of quizzes
+     * @throws IOException If the catalog can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: QuizSimulation <flags.idx> [quizzes]");
+            System.exit(1);
+        }
+        int quizzes = args.length == 2 ? Integer.parseInt(args[1]) : DEFAULT_QUIZZES;
+        FlagCatalog catalog = FlagCatalog.read(new ByteArrayInputStream(
+                BenchmarkRunner.readFile(new File(args[0]))));
+        QuizEngine engine = QuizBenchmarks.createEngine(catalog, CHOICES);
+
+        long[] answerPositions = new long[CHOICES];
+        long[] askedFlags = new long[catalog.size()];
+        long questions = 0;
+        long start = System.nanoTime();
+        for (int quiz = 0; quiz < quizzes; quiz++) {
+            engine.startQuiz(quiz);
+            while (true) {
+                int correctAnswer = engine.getCorrectAnswer();
+                ++askedFlags[correctAnswer];
+                int answerIndex = 0;
+                while (!engine.guess(answerIndex))
+                    ++answerIndex;
+                ++answerPositions[answerIndex];
+                ++questions;
+                if (engine.isQuizOver())
+                    break;
+                engine.nextQuestion();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.US,
+                "%d quizzes, %d questions in %d ms: %.0f quizzes/s",
+                quizzes, questions, elapsed / 1000000, quizzes * 1e9 / elapsed));
+        System.out.println(String.format(Locale.US,
+                "Correct Button chi-square: %.1f (%d degrees of freedom)",
+                chiSquare(answerPositions, CHOICES), CHOICES - 1));
+        System.out.println(String.format(Locale.US,
+                "Asked flags chi-square: %.1f (%d degrees of freedom)",
+                chiSquare(askedFlags, catalog.size()), catalog.size() - 1));
+    }
+
+    /**
+     * Play a whole quiz, trying the answers of each question in order.
+     *
+     * @param engine Quiz engine
+     * @param seed   Seed of the quiz
+     */
+    static void play(QuizEngine engine, long seed) {
+        engine.startQuiz(seed);
+        while (true) {
+            int answerIndex = 0;
+            while (!engine.guess(answerIndex))
+                ++answerIndex;
+            if (engine.isQuizOver())
+                return;
+            engine.nextQuestion();
+        }
+    }
+
+    /**
+     * Pearson's chi-square statistic against a uniform distribution.
+     *
+     * @param counts     Observed count of each value
+     * @param categories Number of values
+     * @return Chi-square statistic
+     */
+    private static double chiSquare(long[] counts, int categories) {
+        long total = 0;
+        for (int i = 0; i < categories; i++)
+            total += counts[i];
+        double expected = total / (double) categories;
+        double chiSquare = 0;
+        for (int i = 0; i < categories; i++) {
+            double difference = counts[i] - expected;
+            chiSquare += difference * difference / expected;
+        }
+        return chiSquare;
+    }
+}
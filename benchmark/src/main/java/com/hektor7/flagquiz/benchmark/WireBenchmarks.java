@@ -0,0 +1,148 @@
+// WireBenchmarks.java
+// Benchmarks of the answers sent to the quiz server, next to the JSON
+// a web API would send, for comparison
+package com.hektor7.flagquiz.benchmark;
+
+import com.hektor7.flagquiz.AnswerEvent;
+import com.hektor7.flagquiz.QuizRandom;
+import com.hektor7.flagquiz.WireFormat;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public final class WireBenchmarks {
+    private static final int EVENTS = 1200; // a long session's answers
+    private static final int FRAME_HEADER = 5; // Protocol frame length and type
+    private static final int CHOICES = 6;
+
+    private WireBenchmarks() {
+    }
+
+    /**
+     * @return Benchmarks of encoding and decoding answers, per answer
+     */
+    public static List<Benchmark> create() {
+        final AnswerEvent[] events = createEvents(new QuizRandom(42));
+        final ByteBuffer buffer = ByteBuffer.allocate(WireFormat.maxAnswersSize(EVENTS));
+        final ByteBuffer[] encoded = encodeSingle(events);
+        final StringBuilder json = new StringBuilder();
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+        benchmarks.add(new Benchmark("wire.answers.encode.single") {
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                for (int i = 0; i < repetitions; i++) {
+                    buffer.clear();
+                    WireFormat.writeAnswers(buffer, events, i % EVENTS, 1);
+                    result += buffer.position();
+                }
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("wire.answers.decode.single") {
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                try {
+                    for (int i = 0; i < repetitions; i++) {
+                        ByteBuffer answer = encoded[i % EVENTS];
+                        answer.rewind();
+                        result += WireFormat.readAnswers(answer, 1)[0].imageRef;
+                    }
+                } catch (IOException exception) {
+                    throw new IllegalStateException(exception);
+                }
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("wire.answers.encode.json") {
+            @Override
+            public long run(int repetitions) {
+                long result = 0;
+                for (int i = 0; i < repetitions; i++) {
+                    json.setLength(0);
+                    appendJson(json, events[i % EVENTS]);
+                    result += utf8(json.toString()).length;
+                }
+                return result;
+            }
+        });
+        return benchmarks;
+    }
+
+    /**
+     * A player answers each question once, in its own ANSWERS frame, as
+     * LoadGenerator measures on the live server.
+     *
+     * @return Bytes per answer of each encoding, for the report
+     */
+    public static String describeSizes() {
+        AnswerEvent[] events = createEvents(new QuizRandom(42));
+        StringBuilder json = new StringBuilder();
+        long jsonBytes = 0;
+        for (AnswerEvent event : events) {
+            json.setLength(0);
+            appendJson(json, event);
+            jsonBytes += utf8(json.toString()).length;
+        }
+        long wireBytes = 0;
+        for (ByteBuffer answer : encodeSingle(events))
+            wireBytes += answer.limit();
+        return String.format(Locale.US,
+                "Bytes per answer: wire %.1f (%.1f framed), json %.1f",
+                wireBytes / (double) EVENTS,
+                (wireBytes + FRAME_HEADER * EVENTS) / (double) EVENTS,
+                jsonBytes / (double) EVENTS);
+    }
+
+    // answers to consecutive questions, a few seconds apart, with image
+    // references drawn as QuizSession draws them
+    private static AnswerEvent[] createEvents(Random random) {
+        AnswerEvent[] events = new AnswerEvent[EVENTS];
+        long time = 1000000000L + random.nextInt(1000000000); // us since boot
+        for (int i = 0; i < EVENTS; i++) {
+            long shown = time + 200000 + random.nextInt(800000);
+            long answered = shown + 300000 + random.nextInt(2700000);
+            events[i] = new AnswerEvent(i, random.nextInt() & Integer.MAX_VALUE,
+                    1 << random.nextInt(CHOICES), shown, answered);
+            time = answered;
+        }
+        return events;
+    }
+
+    // each event as the single answer of an ANSWERS frame
+    private static ByteBuffer[] encodeSingle(AnswerEvent[] events) {
+        ByteBuffer[] encoded = new ByteBuffer[events.length];
+        for (int i = 0; i < events.length; i++) {
+            encoded[i] = ByteBuffer.allocate(WireFormat.maxAnswersSize(1));
+            WireFormat.writeAnswers(encoded[i], events, i, 1);
+            encoded[i].flip();
+        }
+        return encoded;
+    }
+
+    // what a JSON API would send: text, every field labelled
+    private static void appendJson(StringBuilder json, AnswerEvent event) {
+        json.append("{\"question\":").append(event.question)
+                .append(",\"image\":").append(event.imageRef)
+                .append(",\"answer\":").append(Integer.numberOfTrailingZeros(event.answerMask))
+                .append(",\"shownMicros\":").append(event.shownMicros)
+                .append(",\"answeredMicros\":").append(event.answeredMicros)
+                .append('}');
+    }
+
+    private static byte[] utf8(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException exception) {
+            throw new AssertionError(exception);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+// FlagCatalogWriter.java
+// Scans the flag images and writes the binary catalog read by FlagCatalog
+package com.hektor7.flagquiz.build;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class FlagCatalogWriter {
+    // must match the constants in the app's FlagCatalog
+    public static final String CATALOG_FILE = "flags.idx";
+    public static final int MAGIC = 0x464C4743; // "FLGC"
+    public static final int VERSION = 1;
+
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+
+    private FlagCatalogWriter() {
+    }
+
+    /**
+     * Write the catalog. Layout, all big-endian:
+     * magic, version, region count, region names (UTF),
+     * flag count, then per flag: region index (byte), file name (UTF),
+     * display name (UTF), asset path (UTF), width (short), height (short).
+     * Regions and flags are sorted by name, so flag ids are stable
+     * as long as the set of images doesn't change.
+     *
+     * @param flagsDir    Directory holding one folder of PNGs per region
+     * @param catalogFile Catalog to write
+     * @throws IOException If an image can't be read or the catalog written
+     */
+    public static void write(File flagsDir, File catalogFile) throws IOException {
+        List<Flag> flags = scan(flagsDir);
+        List<String> regions = new ArrayList<String>();
+        for (Flag flag : flags) {
+            if (!regions.contains(flag.region))
+                regions.add(flag.region);
+        }
+
+        catalogFile.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(catalogFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(regions.size());
+            for (String region : regions)
+                out.writeUTF(region);
+
+            out.writeShort(flags.size());
+            for (Flag flag : flags) {
+                out.writeByte(regions.indexOf(flag.region));
+                out.writeUTF(flag.fileName);
+                out.writeUTF(flag.displayName);
+                out.writeUTF(flag.assetPath);
+                out.writeShort(flag.width);
+                out.writeShort(flag.height);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * List every flag image, sorted by region and file name.
+     *
+     * @param flagsDir Directory holding one folder of PNGs per region
+     * @return Flags found
+     * @throws IOException If an image header can't be read
+     */
+    public static List<Flag> scan(File flagsDir) throws IOException {
+        List<Flag> flags = new ArrayList<Flag>();
+        File[] regionDirs = flagsDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory();
+            }
+        });
+        Arrays.sort(regionDirs);
+
+        for (File regionDir : regionDirs) {
+            File[] images = regionDir.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.getName().endsWith(".png");
+                }
+            });
+            Arrays.sort(images);
+
+            for (File image : images)
+                flags.add(new Flag(regionDir.getName(), image));
+        }
+        return flags;
+    }
+
+    /**
+     * One flag image, e.g. Europe/Europe-Bosnia.png.
+     */
+    public static final class Flag {
+        public final String region; // e.g. Europe
+        public final String fileName; // e.g. Europe-Bosnia
+        public final String displayName; // e.g. Bosnia
+        public final String assetPath; // e.g. Europe/Europe-Bosnia.png
+        public final File file;
+        public final int width;
+        public final int height;
+
+        Flag(String region, File file) throws IOException {
+            String name = file.getName();
+            this.region = region;
+            this.fileName = name.substring(0, name.length() - ".png".length());
+            this.displayName = this.fileName.substring(
+                    this.fileName.indexOf('-') + 1).replace('_', ' ');
+            this.assetPath = region + "/" + name;
+            this.file = file;
+
+            // read the size from the PNG header
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                if (in.readLong() != PNG_SIGNATURE)
+                    throw new IOException(file + " is not a PNG image");
+                in.readInt(); // IHDR length
+                in.readInt(); // IHDR type
+                this.width = in.readInt();
+                this.height = in.readInt();
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// FlagPackWriter.java
+// Packs every flag image into the container read by FlagPack
+package com.hektor7.flagquiz.build;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+public final class FlagPackWriter {
+    // must match the constants in the core's FlagPack
+    public static final String PACK_FILE = "flags.pack";
+    public static final int MAGIC = 0x464C4750; // "FLGP"
+    public static final int VERSION = 1;
+
+    // each flag starts on a page, so reading one maps the fewest pages
+    public static final int ALIGNMENT = 4096;
+
+    private FlagPackWriter() {
+    }
+
+    /**
+     * Write the pack. Layout, all big-endian: magic, version, alignment,
+     * flag count, then an offset and a length per flag, then each PNG
+     * as is, padded with zeros to the next multiple of ALIGNMENT.
+     * Flags are in the order of FlagCatalogWriter.scan, which is the
+     * flag id order of the catalog. Vectorized flags are left out, with
+     * a length of 0.
+     *
+     * @param flags      Flags, as scanned for the catalog
+     * @param vectorized Flags drawn from FlagVectorWriter's file instead, by flag id
+     * @param packFile   Pack to write
+     * @throws IOException If an image can't be read or the pack written
+     */
+    public static void write(List<FlagCatalogWriter.Flag> flags, boolean[] vectorized,
+                             File packFile) throws IOException {
+        packFile.getParentFile().mkdirs();
+        packFile.delete(); // drop the padding of a longer previous pack
+        RandomAccessFile out = new RandomAccessFile(packFile, "rw");
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ALIGNMENT);
+            out.writeInt(flags.size());
+
+            long offset = align(16 + 8L * flags.size());
+            byte[] buffer = new byte[8192];
+            for (int i = 0; i < flags.size(); i++) {
+                File image = flags.get(i).file;
+                out.seek(16 + 8L * i);
+                out.writeInt((int) offset);
+                if (vectorized[i]) {
+                    out.writeInt(0);
+                    continue;
+                }
+                out.writeInt((int) image.length());
+
+                out.seek(offset);
+                FileInputStream in = new FileInputStream(image);
+                try {
+                    int count;
+                    while ((count = in.read(buffer)) > 0)
+                        out.write(buffer, 0, count);
+                } finally {
+                    in.close();
+                }
+                offset = align(offset + image.length());
+            }
+            out.setLength(offset); // pad the last flag too
+        } finally {
+            out.close();
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
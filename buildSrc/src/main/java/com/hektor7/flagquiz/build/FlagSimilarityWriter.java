@@ -0,0 +1,265 @@
+// FlagSimilarityWriter.java
+// Finds the flags that look alike and writes the index read by FlagSimilarity
+package com.hektor7.flagquiz.build;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Describes each flag by a feature vector: the mean color of a coarse
+ * grid (layout), a histogram of its colors (dominant colors), whether
+ * its color changes run across or down the flag (stripe orientation)
+ * and how much detail its center holds (emblems). Colors are compared
+ * mostly by hue, so the glossy shading of the images counts little.
+ * The index holds the nearest flags of each flag, so the app finds
+ * lookalike distractors with a lookup instead of a search.
+ */
+public final class FlagSimilarityWriter {
+    // must match the constants in the core's FlagSimilarity
+    public static final String SIMILARITY_FILE = "flags.sim";
+    public static final int MAGIC = 0x464C4753; // "FLGS"
+    public static final int VERSION = 1;
+
+    // neighbors kept per flag, enough for 9 answers
+    public static final int NEIGHBORS = 12;
+
+    // the features are computed on the flag scaled to this size
+    private static final int SAMPLE_WIDTH = 48;
+    private static final int SAMPLE_HEIGHT = 32;
+    private static final double BORDER = 0.03; // share of each side left out, the image frame
+
+    // layout grid
+    private static final int GRID_COLUMNS = 6;
+    private static final int GRID_ROWS = 4;
+
+    // color histogram: a gray and a dark bin, then hue bins
+    private static final int HUE_BINS = 10;
+
+    // grid colors, histogram, then orientation, amount of change, center detail, emblem
+    private static final int FEATURES = 3 * GRID_COLUMNS * GRID_ROWS + HUE_BINS + 2 + 4;
+
+    // a neighbor at the median distance between two flags is stored as this
+    private static final int MEDIAN_DISTANCE = 128;
+
+    // weights of the feature groups
+    private static final double GRID_WEIGHT = 1.0;
+    private static final double HISTOGRAM_WEIGHT = 1.5;
+    private static final double ORIENTATION_WEIGHT = 0.6;
+    private static final double DETAIL_WEIGHT = 1.2;
+
+    private FlagSimilarityWriter() {
+    }
+
+    /**
+     * Write the index. Layout, big-endian: magic, version, flag count
+     * and neighbors per flag as ints, then per flag id its neighbors,
+     * nearest first, each a flag id (short) and a distance (byte,
+     * MEDIAN_DISTANCE for the median distance between two flags,
+     * capped at 255).
+     *
+     * @param flags          Flags, as scanned for the catalog
+     * @param similarityFile Index to write
+     * @throws IOException If an image can't be read or the index written
+     */
+    public static void write(List<FlagCatalogWriter.Flag> flags, File similarityFile)
+            throws IOException {
+        double[][] features = new double[flags.size()][];
+        for (int i = 0; i < flags.size(); i++)
+            features[i] = describe(flags.get(i).file);
+
+        int count = flags.size();
+        double[][] distances = new double[count][count];
+        double[] all = new double[count * (count - 1) / 2];
+        int pairs = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                double distance = distance(features[i], features[j]);
+                distances[i][j] = distance;
+                distances[j][i] = distance;
+                all[pairs++] = distance;
+            }
+        }
+        Arrays.sort(all);
+        double median = pairs == 0 ? 1 : Math.max(all[pairs / 2], 1e-9);
+
+        int neighbors = Math.min(NEIGHBORS, Math.max(0, count - 1));
+        similarityFile.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(similarityFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(neighbors);
+            for (int i = 0; i < count; i++) {
+                Integer[] order = new Integer[count];
+                for (int j = 0; j < count; j++)
+                    order[j] = j;
+                final double[] row = distances[i];
+                final int self = i;
+                Arrays.sort(order, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        if (a == self || b == self)
+                            return a == self ? (b == self ? 0 : 1) : -1;
+                        return Double.compare(row[a], row[b]);
+                    }
+                });
+                for (int n = 0; n < neighbors; n++) {
+                    out.writeShort(order[n]);
+                    out.writeByte((int) Math.min(255,
+                            Math.round(row[order[n]] / median * MEDIAN_DISTANCE)));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param file PNG image
+     * @return Feature vector, weighted so that distances add up
+     * @throws IOException If the image can't be read
+     */
+    static double[] describe(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null)
+            throw new IOException(file + " is not a readable image");
+        double[][] pixels = sample(image); // per pixel: chroma a, chroma b, lightness
+
+        double[] features = new double[FEATURES];
+        int f = 0;
+
+        // layout: mean color of each grid cell
+        for (int row = 0; row < GRID_ROWS; row++) {
+            for (int column = 0; column < GRID_COLUMNS; column++) {
+                double[] mean = new double[3];
+                int cells = 0;
+                int top = row * SAMPLE_HEIGHT / GRID_ROWS;
+                int bottom = (row + 1) * SAMPLE_HEIGHT / GRID_ROWS;
+                int left = column * SAMPLE_WIDTH / GRID_COLUMNS;
+                int right = (column + 1) * SAMPLE_WIDTH / GRID_COLUMNS;
+                for (int y = top; y < bottom; y++) {
+                    for (int x = left; x < right; x++) {
+                        double[] pixel = pixels[y * SAMPLE_WIDTH + x];
+                        for (int c = 0; c < 3; c++)
+                            mean[c] += pixel[c];
+                        ++cells;
+                    }
+                }
+                for (int c = 0; c < 3; c++)
+                    features[f++] = GRID_WEIGHT * mean[c] / cells / Math.sqrt(GRID_COLUMNS * GRID_ROWS);
+            }
+        }
+
+        // dominant colors: share of the pixels in each color bin
+        double[] histogram = new double[HUE_BINS + 2];
+        for (double[] pixel : pixels)
+            ++histogram[colorBin(pixel)];
+        for (double share : histogram)
+            features[f++] = HISTOGRAM_WEIGHT * share / pixels.length;
+
+        // stripe orientation and detail: color changes along rows and columns
+        double across = 0; // changes from one column to the next
+        double down = 0; // changes from one row to the next
+        double centerDetail = 0;
+        int centerPixels = 0;
+        for (int y = 0; y < SAMPLE_HEIGHT; y++) {
+            for (int x = 0; x < SAMPLE_WIDTH; x++) {
+                double[] pixel = pixels[y * SAMPLE_WIDTH + x];
+                double right = x + 1 < SAMPLE_WIDTH
+                        ? colorDistance(pixel, pixels[y * SAMPLE_WIDTH + x + 1]) : 0;
+                double below = y + 1 < SAMPLE_HEIGHT
+                        ? colorDistance(pixel, pixels[(y + 1) * SAMPLE_WIDTH + x]) : 0;
+                across += right;
+                down += below;
+                if (x >= SAMPLE_WIDTH / 4 && x < SAMPLE_WIDTH * 3 / 4
+                        && y >= SAMPLE_HEIGHT / 4 && y < SAMPLE_HEIGHT * 3 / 4) {
+                    centerDetail += right + below;
+                    ++centerPixels;
+                }
+            }
+        }
+        features[f++] = ORIENTATION_WEIGHT * (across - down) / (across + down + 1);
+        features[f++] = ORIENTATION_WEIGHT * Math.min(1, (across + down) / pixels.length);
+        features[f++] = DETAIL_WEIGHT * Math.min(1, centerDetail / centerPixels);
+        features[f] = DETAIL_WEIGHT * (centerDetail / centerPixels > 0.25 ? 1 : 0); // emblem
+        return features;
+    }
+
+    // flag without its frame, scaled to SAMPLE_WIDTH x SAMPLE_HEIGHT
+    private static double[][] sample(BufferedImage image) {
+        int left = (int) (image.getWidth() * BORDER);
+        int top = (int) (image.getHeight() * BORDER);
+        int width = image.getWidth() - 2 * left;
+        int height = image.getHeight() - 2 * top;
+        double[][] pixels = new double[SAMPLE_WIDTH * SAMPLE_HEIGHT][];
+        for (int y = 0; y < SAMPLE_HEIGHT; y++) {
+            for (int x = 0; x < SAMPLE_WIDTH; x++) {
+                // box filter over the source pixels of the sample
+                double[] sum = new double[3];
+                int x0 = left + x * width / SAMPLE_WIDTH;
+                int x1 = Math.max(x0 + 1, left + (x + 1) * width / SAMPLE_WIDTH);
+                int y0 = top + y * height / SAMPLE_HEIGHT;
+                int y1 = Math.max(y0 + 1, top + (y + 1) * height / SAMPLE_HEIGHT);
+                for (int sy = y0; sy < y1; sy++) {
+                    for (int sx = x0; sx < x1; sx++) {
+                        double[] color = toOpponent(image.getRGB(sx, sy));
+                        for (int c = 0; c < 3; c++)
+                            sum[c] += color[c];
+                    }
+                }
+                int area = (x1 - x0) * (y1 - y0);
+                for (int c = 0; c < 3; c++)
+                    sum[c] /= area;
+                pixels[y * SAMPLE_WIDTH + x] = sum;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * @param argb Color
+     * @return Red-green and yellow-blue chroma, and a lightness
+     * weighted down, all about from -1 to 1
+     */
+    private static double[] toOpponent(int argb) {
+        double alpha = ((argb >>> 24) & 0xFF) / 255.0;
+        // transparent pixels count as white, the background they are shown on
+        double r = (((argb >> 16) & 0xFF) / 255.0) * alpha + (1 - alpha);
+        double g = (((argb >> 8) & 0xFF) / 255.0) * alpha + (1 - alpha);
+        double b = ((argb & 0xFF) / 255.0) * alpha + (1 - alpha);
+        return new double[]{r - g, (r + g) / 2 - b, 0.5 * ((r + g + b) / 3 * 2 - 1)};
+    }
+
+    // gray, dark, or the hue bin of a pixel
+    private static int colorBin(double[] pixel) {
+        double chroma = Math.hypot(pixel[0], pixel[1]);
+        if (pixel[2] < -0.3)
+            return HUE_BINS + 1; // dark
+        if (chroma < 0.15)
+            return HUE_BINS; // white or gray
+        double hue = Math.atan2(pixel[1], pixel[0]) / (2 * Math.PI) + 0.5; // 0 to 1
+        return Math.min(HUE_BINS - 1, (int) (hue * HUE_BINS));
+    }
+
+    private static double colorDistance(double[] a, double[] b) {
+        return Math.sqrt((a[0] - b[0]) * (a[0] - b[0]) + (a[1] - b[1]) * (a[1] - b[1])
+                + (a[2] - b[2]) * (a[2] - b[2]));
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++)
+            sum += (a[i] - b[i]) * (a[i] - b[i]);
+        return Math.sqrt(sum);
+    }
+}
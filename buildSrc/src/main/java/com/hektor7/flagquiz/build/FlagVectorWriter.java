@@ -0,0 +1,236 @@
+// FlagVectorWriter.java
+// Traces the flags made of colored blocks into the vectors read by FlagVectors
+package com.hektor7.flagquiz.build;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flags made of axis-aligned stripes and blocks, like most tricolors
+ * and Nordic crosses, are stored as rectangles filled with a vertical
+ * gradient, the glossy shading the flag images share, and drawn at any
+ * size by the app. Flags with curves, diagonals or emblems would need
+ * too many rectangles; they are left out and keep their PNG in the
+ * flag pack.
+ */
+public final class FlagVectorWriter {
+    // must match the constants in the core's FlagVectors
+    public static final String VECTOR_FILE = "flags.vec";
+    public static final int MAGIC = 0x464C4756; // "FLGV"
+    public static final int VERSION = 1;
+
+    // most rectangles of a flag worth vectorizing
+    private static final int MAX_RECTS = 64;
+
+    // largest channel difference between the pixels of a run
+    private static final int RUN_TOLERANCE = 6;
+    // largest channel difference between two rows of a rectangle
+    private static final int ROW_TOLERANCE = 12;
+    // largest channel difference of a drawn pixel to the image
+    private static final int PIXEL_TOLERANCE = 16;
+    // share of the pixels allowed to be further off, e.g. antialiasing
+    private static final double MAX_ERROR_SHARE = 0.01;
+
+    private FlagVectorWriter() {
+    }
+
+    /**
+     * Write the vectors. Layout: magic, version and flag count as
+     * big-endian ints, then a big-endian offset per flag id, 0 for a
+     * flag kept as PNG, then each vector flag: varints width, height
+     * and rectangle count, then per rectangle in drawing order its top
+     * and bottom ARGB colors as big-endian ints and varints left, top,
+     * width and height, in image pixels.
+     *
+     * @param flags      Flags, as scanned for the catalog
+     * @param vectorFile Vectors to write
+     * @return Whether each flag, by flag id, was vectorized
+     * @throws IOException If an image can't be read or the vectors written
+     */
+    public static boolean[] write(List<FlagCatalogWriter.Flag> flags, File vectorFile)
+            throws IOException {
+        boolean[] vectorized = new boolean[flags.size()];
+        int[] offsets = new int[flags.size()];
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int headerSize = 12 + 4 * flags.size();
+        for (int i = 0; i < flags.size(); i++) {
+            byte[] vector = vectorize(flags.get(i).file);
+            if (vector != null) {
+                vectorized[i] = true;
+                offsets[i] = headerSize + body.size();
+                body.write(vector);
+            }
+        }
+
+        vectorFile.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(vectorFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(flags.size());
+            for (int offset : offsets)
+                out.writeInt(offset);
+            body.writeTo(out);
+        } finally {
+            out.close();
+        }
+        return vectorized;
+    }
+
+    /**
+     * @param file PNG image
+     * @return Encoded vector flag, or null if the flag is too complex
+     * @throws IOException If the image can't be read
+     */
+    static byte[] vectorize(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null)
+            throw new IOException(file + " is not a readable image");
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        List<Rect> rects = traceRects(pixels, width, height);
+        if (rects == null || countErrors(rects, pixels, width) > pixels.length * MAX_ERROR_SHARE)
+            return null;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeVarint(out, width);
+        writeVarint(out, height);
+        writeVarint(out, rects.size());
+        for (Rect rect : rects) {
+            out.writeInt(rect.topColor());
+            out.writeInt(rect.bottomColor());
+            writeVarint(out, rect.left);
+            writeVarint(out, rect.top);
+            writeVarint(out, rect.width);
+            writeVarint(out, rect.rowColors.size());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Cover the pixels with rectangles: each row is split into runs of
+     * one color, and a run is merged into the rectangle above it when
+     * it spans the same columns and its color is close to the row above.
+     *
+     * @param pixels ARGB pixels
+     * @param width  Image width
+     * @param height Image height
+     * @return Rectangles, or null if there are more than MAX_RECTS
+     */
+    private static List<Rect> traceRects(int[] pixels, int width, int height) {
+        List<Rect> rects = new ArrayList<Rect>();
+        List<Rect> open = new ArrayList<Rect>(); // rectangles reaching the previous row
+        for (int y = 0; y < height; y++) {
+            List<Rect> stillOpen = new ArrayList<Rect>();
+            int x = 0;
+            while (x < width) {
+                int color = pixels[y * width + x];
+                int end = x + 1;
+                while (end < width && distance(pixels[y * width + end], color) <= RUN_TOLERANCE)
+                    ++end;
+                Rect rect = null;
+                for (Rect candidate : open) {
+                    if (candidate.left == x && candidate.width == end - x
+                            && distance(candidate.bottomColor(), color) <= ROW_TOLERANCE)
+                        rect = candidate;
+                }
+                if (rect == null) {
+                    if (rects.size() == MAX_RECTS)
+                        return null;
+                    rect = new Rect(x, y, end - x);
+                    rects.add(rect);
+                }
+                rect.rowColors.add(color);
+                stillOpen.add(rect);
+                x = end;
+            }
+            open = stillOpen;
+        }
+        return rects;
+    }
+
+    /**
+     * @return Pixels the gradients draw further than PIXEL_TOLERANCE off
+     */
+    private static int countErrors(List<Rect> rects, int[] pixels, int width) {
+        int errors = 0;
+        for (Rect rect : rects) {
+            int rows = rect.rowColors.size();
+            for (int row = 0; row < rows; row++) {
+                int drawn = interpolate(rect.topColor(), rect.bottomColor(),
+                        rows == 1 ? 0 : row / (double) (rows - 1));
+                int offset = (rect.top + row) * width + rect.left;
+                for (int x = 0; x < rect.width; x++) {
+                    if (distance(pixels[offset + x], drawn) > PIXEL_TOLERANCE)
+                        ++errors;
+                }
+            }
+        }
+        return errors;
+    }
+
+    // ARGB color a fraction of the way from a to b
+    private static int interpolate(int a, int b, double fraction) {
+        int color = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int from = (a >>> shift) & 0xFF;
+            int to = (b >>> shift) & 0xFF;
+            color |= (int) Math.round(from + (to - from) * fraction) << shift;
+        }
+        return color;
+    }
+
+    // largest difference of the ARGB channels
+    private static int distance(int a, int b) {
+        int distance = 0;
+        for (int shift = 0; shift < 32; shift += 8)
+            distance = Math.max(distance, Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF)));
+        return distance;
+    }
+
+    // same encoding as the core's WireFormat.writeVarint
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * A rectangle being traced, with the color of each of its rows.
+     */
+    private static final class Rect {
+        final int left;
+        final int top;
+        final int width;
+        final List<Integer> rowColors = new ArrayList<Integer>();
+
+        Rect(int left, int top, int width) {
+            this.left = left;
+            this.top = top;
+            this.width = width;
+        }
+
+        int topColor() {
+            return this.rowColors.get(0);
+        }
+
+        int bottomColor() {
+            return this.rowColors.get(this.rowColors.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+// GenerateFlagCatalogTask.java
+// Build step that indexes, vectorizes, compares and packs the flag images into generated assets
+package com.hektor7.flagquiz.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class GenerateFlagCatalogTask extends DefaultTask {
+    private File flagsDir; // directory holding one folder of PNGs per region
+    private File outputDir; // generated assets directory
+
+    @InputDirectory
+    public File getFlagsDir() {
+        return this.flagsDir;
+    }
+
+    public void setFlagsDir(File flagsDir) {
+        this.flagsDir = flagsDir;
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return this.outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    @TaskAction
+    public void generate() {
+        try {
+            FlagCatalogWriter.write(this.flagsDir,
+                    new File(this.outputDir, FlagCatalogWriter.CATALOG_FILE));
+            List<FlagCatalogWriter.Flag> flags = FlagCatalogWriter.scan(this.flagsDir);
+            boolean[] vectorized = FlagVectorWriter.write(flags,
+                    new File(this.outputDir, FlagVectorWriter.VECTOR_FILE));
+            FlagSimilarityWriter.write(flags,
+                    new File(this.outputDir, FlagSimilarityWriter.SIMILARITY_FILE));
+            FlagPackWriter.write(flags, vectorized,
+                    new File(this.outputDir, FlagPackWriter.PACK_FILE));
+        } catch (IOException exception) {
+            throw new GradleException("Error generating the flag catalog", exception);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+// AnswerEvent.java
+// One player's answer to a question, as sent over the network
+package com.hektor7.flagquiz;
+
+/**
+ * The answers a player gave to one question. Answers are a bitmask of
+ * answer indexes, the same as QuizEngine's guessed answers, and times
+ * are microseconds of the player's monotonic clock, so no country
+ * name or wall-clock time is ever sent.
+ */
+public final class AnswerEvent {
+    public final int question; // question index, from 0
+    public final int imageRef; // question's image, guards against stale answers
+    public final int answerMask; // bit of each answer index chosen
+    public final long shownMicros; // when the flag was shown
+    public final long answeredMicros; // when the last answer was chosen
+
+    /**
+     * @param question       Question index, from 0
+     * @param imageRef       Opaque reference to the question's image, as
+     *                       the server sent it; not a flag id
+     * @param answerMask     Bit of each answer index chosen, not 0
+     * @param shownMicros    Time the flag was shown, in microseconds
+     * @param answeredMicros Time of the last answer, not before shownMicros
+     */
+    public AnswerEvent(int question, int imageRef, int answerMask,
+                       long shownMicros, long answeredMicros) {
+        this.question = question;
+        this.imageRef = imageRef;
+        this.answerMask = answerMask;
+        this.shownMicros = shownMicros;
+        this.answeredMicros = answeredMicros;
+    }
+
+    /**
+     * @return Time from the flag shown to the last answer, in microseconds
+     */
+    public long getReactionMicros() {
+        return this.answeredMicros - this.shownMicros;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof AnswerEvent))
+            return false;
+        AnswerEvent other = (AnswerEvent) object;
+        return this.question == other.question && this.imageRef == other.imageRef
+                && this.answerMask == other.answerMask
+                && this.shownMicros == other.shownMicros
+                && this.answeredMicros == other.answeredMicros;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((this.question * 31 + this.imageRef) * 31 + this.answerMask) * 31
+                + (int) (this.answeredMicros ^ (this.answeredMicros >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "AnswerEvent{question=" + this.question + " image=" + this.imageRef
+                + " answers=" + Integer.toBinaryString(this.answerMask)
+                + " shown=" + this.shownMicros + " answered=" + this.answeredMicros + "}";
+    }
+}
@@ -0,0 +1,66 @@
+// ByteBufferInputStream.java
+// InputStream reading straight from a ByteBuffer
+package com.hektor7.flagquiz;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the remaining bytes of a buffer without copying them first,
+ * e.g. a flag in the memory-mapped pack. Supports mark/reset.
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer; // read from position to limit
+    private int mark; // position to reset to
+
+    /**
+     * @param buffer Buffer to read; the stream moves its position
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.mark = buffer.position();
+    }
+
+    @Override
+    public int read() {
+        return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0)
+            return 0;
+        int count = Math.min(length, this.buffer.remaining());
+        if (count == 0)
+            return -1;
+        this.buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long count) {
+        int skipped = (int) Math.max(0, Math.min(count, this.buffer.remaining()));
+        this.buffer.position(this.buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return this.buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        this.mark = this.buffer.position();
+    }
+
+    @Override
+    public void reset() {
+        this.buffer.position(this.mark);
+    }
+}
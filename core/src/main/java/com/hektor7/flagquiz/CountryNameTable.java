@@ -0,0 +1,64 @@
+// CountryNameTable.java
+// Display strings of every flag, built once per catalog
+package com.hektor7.flagquiz;
+
+/**
+ * Country names and the correct-answer message of every flag id, in
+ * one language, built once so that binding the answer Buttons and
+ * showing the result of a guess never allocates. Names are interned:
+ * a flag's name is always the same String instance.
+ */
+public class CountryNameTable {
+    public static final String DEFAULT_CORRECT_FORMAT = "%1$s!";
+
+    private final String[] names; // country name of each flag id
+    private final String[] correctMessages; // e.g. Bosnia!
+
+    /**
+     * @param catalog Flag catalog
+     * @return Table of the catalog's country names, in English
+     */
+    public static CountryNameTable fromCatalog(FlagCatalog catalog) {
+        String[] names = new String[catalog.size()];
+        for (int flagId = 0; flagId < names.length; flagId++)
+            names[flagId] = catalog.getName(flagId);
+        return new CountryNameTable(names, DEFAULT_CORRECT_FORMAT);
+    }
+
+    /**
+     * @param names         Country name of each flag id
+     * @param correctFormat Format of the correct-answer message, with
+     *                      the name as its only argument, e.g. %1$s!
+     */
+    public CountryNameTable(String[] names, String correctFormat) {
+        this.names = new String[names.length];
+        this.correctMessages = new String[names.length];
+        for (int flagId = 0; flagId < names.length; flagId++) {
+            this.names[flagId] = names[flagId].intern();
+            this.correctMessages[flagId] = String.format(correctFormat, names[flagId]);
+        }
+    }
+
+    /**
+     * @return Number of flags
+     */
+    public int size() {
+        return this.names.length;
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Country name, e.g. Bosnia
+     */
+    public String getName(int flagId) {
+        return this.names[flagId];
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Message shown when the flag is guessed, e.g. Bosnia!
+     */
+    public String getCorrectMessage(int flagId) {
+        return this.correctMessages[flagId];
+    }
+}
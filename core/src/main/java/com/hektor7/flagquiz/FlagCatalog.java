@@ -0,0 +1,163 @@
+// FlagCatalog.java
+// Index of every flag in the assets, generated at build time
+package com.hektor7.flagquiz;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class FlagCatalog {
+    // must match the build's FlagCatalogWriter
+    public static final String CATALOG_FILE = "flags.idx";
+    private static final int MAGIC = 0x464C4743; // "FLGC"
+    private static final int VERSION = 1;
+
+    private static final int[] NO_FLAGS = new int[0];
+
+    private final String[] regions; // region of each region index
+    private final byte[] regionOf; // region index of each flag id
+    private final String[] fileNames; // e.g. Europe-Bosnia
+    private final String[] names; // e.g. Bosnia
+    private final String[] assetPaths; // e.g. Europe/Europe-Bosnia.png
+    private final short[] widths;
+    private final short[] heights;
+    private final Map<String, int[]> flagIdsByRegion;
+
+    /**
+     * Read a catalog written by the build's FlagCatalogWriter.
+     *
+     * @param stream Catalog contents, not closed
+     * @return Flag catalog
+     * @throws IOException If the stream isn't a supported catalog
+     */
+    public static FlagCatalog read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            throw new IOException("Unsupported flag catalog");
+        return new FlagCatalog(in);
+    }
+
+    /**
+     * @return Catalog without flags, used when the real one can't be read
+     */
+    public static FlagCatalog empty() {
+        return new FlagCatalog();
+    }
+
+    // empty catalog
+    private FlagCatalog() {
+        this.regions = new String[0];
+        this.regionOf = new byte[0];
+        this.fileNames = new String[0];
+        this.names = new String[0];
+        this.assetPaths = new String[0];
+        this.widths = new short[0];
+        this.heights = new short[0];
+        this.flagIdsByRegion = new HashMap<String, int[]>();
+    }
+
+    private FlagCatalog(DataInputStream in) throws IOException {
+        int regionCount = in.readUnsignedByte();
+        this.regions = new String[regionCount];
+        for (int i = 0; i < regionCount; i++)
+            this.regions[i] = in.readUTF();
+
+        int flagCount = in.readUnsignedShort();
+        this.regionOf = new byte[flagCount];
+        this.fileNames = new String[flagCount];
+        this.names = new String[flagCount];
+        this.assetPaths = new String[flagCount];
+        this.widths = new short[flagCount];
+        this.heights = new short[flagCount];
+        int[] regionSizes = new int[regionCount];
+        for (int id = 0; id < flagCount; id++) {
+            this.regionOf[id] = in.readByte();
+            this.fileNames[id] = in.readUTF();
+            this.names[id] = in.readUTF();
+            this.assetPaths[id] = in.readUTF();
+            this.widths[id] = in.readShort();
+            this.heights[id] = in.readShort();
+            ++regionSizes[this.regionOf[id]];
+        }
+
+        // flags are sorted by region, so each region is a run of ids
+        this.flagIdsByRegion = new HashMap<String, int[]>();
+        int id = 0;
+        for (int region = 0; region < regionCount; region++) {
+            int[] ids = new int[regionSizes[region]];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = id++;
+            this.flagIdsByRegion.put(this.regions[region], ids);
+        }
+    }
+
+    /**
+     * @return Number of flags; flag ids go from 0 to size() - 1
+     */
+    public int size() {
+        return this.fileNames.length;
+    }
+
+    /**
+     * Return the ids of the flags of a region.
+     * The array is shared and must not be modified.
+     *
+     * @param region Region, e.g. North_America
+     * @return Flag ids, empty if the region is unknown
+     */
+    public int[] getFlagIds(String region) {
+        int[] ids = this.flagIdsByRegion.get(region);
+        return ids != null ? ids : NO_FLAGS;
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Region of the flag, e.g. Europe
+     */
+    public String getRegion(int flagId) {
+        return this.regions[this.regionOf[flagId]];
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return File name of the flag without extension, e.g. Europe-Bosnia
+     */
+    public String getFileName(int flagId) {
+        return this.fileNames[flagId];
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Country name, e.g. Bosnia
+     */
+    public String getName(int flagId) {
+        return this.names[flagId];
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Path of the image in the flags folder, e.g. Europe/Europe-Bosnia.png
+     */
+    public String getAssetPath(int flagId) {
+        return this.assetPaths[flagId];
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Width of the image in pixels
+     */
+    public int getWidth(int flagId) {
+        return this.widths[flagId];
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Height of the image in pixels
+     */
+    public int getHeight(int flagId) {
+        return this.heights[flagId];
+    }
+}
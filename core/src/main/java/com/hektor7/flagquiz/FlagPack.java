@@ -0,0 +1,108 @@
+// FlagPack.java
+// Every flag image in one container, generated at build time
+package com.hektor7.flagquiz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the flag images out of flags.pack, usually memory-mapped.
+ * Flags are stored uncompressed in flag id order, each one starting on
+ * a page boundary of the pack, so a flag is read as a slice of the
+ * buffer without copying it. Slices can be taken from any thread.
+ */
+public final class FlagPack {
+    // must match the build's FlagPackWriter
+    public static final String PACK_FILE = "flags.pack";
+    private static final int MAGIC = 0x464C4750; // "FLGP"
+    private static final int VERSION = 1;
+
+    private final ByteBuffer buffer; // whole pack, never repositioned
+    private final int[] offsets; // start of each flag in the pack
+    private final int[] lengths; // bytes of each flag
+
+    /**
+     * Read the index of a pack written by the build's FlagPackWriter.
+     * Layout, all big-endian: magic, version, alignment, flag count,
+     * then an offset and a length per flag id, then the flags.
+     *
+     * @param buffer Pack contents, from position 0; kept by the pack
+     * @return Flag pack
+     * @throws IOException If the buffer isn't a supported pack
+     */
+    public static FlagPack read(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < 16 || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported flag pack");
+        return new FlagPack(buffer);
+    }
+
+    /**
+     * @return Pack without flags, used when the real one can't be read
+     */
+    public static FlagPack empty() {
+        return new FlagPack();
+    }
+
+    // empty pack
+    private FlagPack() {
+        this.buffer = ByteBuffer.allocate(0);
+        this.offsets = new int[0];
+        this.lengths = new int[0];
+    }
+
+    private FlagPack(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        int flagCount = buffer.getInt(12);
+        if (flagCount < 0 || 16 + 8L * flagCount > buffer.capacity())
+            throw new IOException("Corrupt flag pack index");
+        this.offsets = new int[flagCount];
+        this.lengths = new int[flagCount];
+        int index = 16;
+        for (int id = 0; id < flagCount; id++) {
+            this.offsets[id] = buffer.getInt(index);
+            this.lengths[id] = buffer.getInt(index + 4);
+            index += 8;
+            if (this.offsets[id] < index || this.lengths[id] < 0
+                    || this.offsets[id] > buffer.capacity() - this.lengths[id])
+                throw new IOException("Corrupt flag pack entry " + id);
+        }
+    }
+
+    /**
+     * @return Number of flags; flag ids go from 0 to size() - 1
+     */
+    public int size() {
+        return this.offsets.length;
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Whether the pack holds its image; vector flags have none
+     */
+    public boolean hasImage(int flagId) {
+        return flagId < this.lengths.length && this.lengths[flagId] > 0;
+    }
+
+    /**
+     * Return the image of a flag, sharing the pack's memory.
+     *
+     * @param flagId Flag id
+     * @return Read-only buffer holding the PNG, positioned at its start
+     */
+    public ByteBuffer getFlag(int flagId) {
+        ByteBuffer flag = this.buffer.asReadOnlyBuffer();
+        flag.position(this.offsets[flagId]);
+        flag.limit(this.offsets[flagId] + this.lengths[flagId]);
+        return flag.slice();
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Stream over the image of the flag, supporting mark/reset
+     */
+    public InputStream openFlag(int flagId) {
+        return new ByteBufferInputStream(this.getFlag(flagId));
+    }
+}
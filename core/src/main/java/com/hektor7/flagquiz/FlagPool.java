@@ -0,0 +1,173 @@
+// FlagPool.java
+// Flag ids the quiz can draw from, with O(k) random sampling
+package com.hektor7.flagquiz;
+
+import java.util.Random;
+
+public class FlagPool {
+    private final int[] flagIds; // first size entries are in the pool
+    private final int[] positions; // index in flagIds of each flag id
+    private final boolean[] members; // scratch for sort(), by flag id
+    private int size;
+
+    /**
+     * Create an empty pool.
+     *
+     * @param capacity Number of flags in the catalog; flag ids are below it
+     */
+    public FlagPool(int capacity) {
+        this.flagIds = new int[capacity];
+        this.positions = new int[capacity];
+        this.members = new boolean[capacity];
+    }
+
+    /**
+     * @return Number of flags in the pool
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param index Position in the pool, from 0 to size() - 1
+     * @return Flag id at that position
+     */
+    public int get(int index) {
+        return this.flagIds[index];
+    }
+
+    /**
+     * @param flagId Flag id, below the capacity
+     * @return true if the flag is in the pool
+     */
+    public boolean contains(int flagId) {
+        int index = this.positions[flagId];
+        return index < this.size && this.flagIds[index] == flagId;
+    }
+
+    /**
+     * Empty the pool.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Add flags to the pool.
+     *
+     * @param ids Flag ids, e.g. the flags of a region
+     */
+    public void addAll(int[] ids) {
+        for (int flagId : ids) {
+            this.flagIds[this.size] = flagId;
+            this.positions[flagId] = this.size++;
+        }
+    }
+
+    /**
+     * Remove flags from the pool, each in O(1).
+     *
+     * @param ids Flag ids in the pool, e.g. the flags of a region
+     */
+    public void removeAll(int[] ids) {
+        for (int flagId : ids) {
+            // fill the hole with the last flag of the pool
+            this.swap(this.positions[flagId], --this.size);
+        }
+    }
+
+    /**
+     * Put the pool in ascending flag id order, so that a seeded quiz
+     * draws the same flags whatever the pool went through before.
+     * Flag ids are below the capacity, so this is a linear pass over
+     * them rather than a comparison sort.
+     */
+    public void sort() {
+        for (int i = 0; i < this.size; i++)
+            this.members[this.flagIds[i]] = true;
+        int index = 0;
+        for (int flagId = 0; flagId < this.members.length; flagId++) {
+            if (this.members[flagId]) {
+                this.members[flagId] = false;
+                this.flagIds[index] = flagId;
+                this.positions[flagId] = index++;
+            }
+        }
+    }
+
+    /**
+     * Pick count distinct flags at random with a partial Fisher-Yates
+     * shuffle: O(count) time and no allocation. The pool is reordered.
+     *
+     * @param random Random source
+     * @param count  Flags to pick, at most size()
+     * @param out    Receives the flags in its first count entries
+     * @throws IllegalArgumentException If the pool has fewer flags
+     */
+    public void sample(Random random, int count, int[] out) {
+        checkCount(count, this.size);
+        for (int i = 0; i < count; i++) {
+            this.swap(i, i + random.nextInt(this.size - i));
+            out[i] = this.flagIds[i];
+        }
+    }
+
+    /**
+     * Pick count distinct flags at random, never the excluded one.
+     * The excluded flag is swapped out of the range being sampled,
+     * so this is O(count) time with no allocation.
+     *
+     * @param random   Random source
+     * @param excluded Flag id that must not be picked, must be in the pool
+     * @param count    Flags to pick, at most size() - 1
+     * @param out      Receives the flags in its first count entries
+     * @throws IllegalArgumentException If the pool has fewer other flags
+     */
+    public void sampleExcluding(Random random, int excluded, int count, int[] out) {
+        checkCount(count, this.size - 1);
+        int last = this.size - 1;
+        this.swap(this.positions[excluded], last);
+        for (int i = 0; i < count; i++) {
+            this.swap(i, i + random.nextInt(last - i));
+            out[i] = this.flagIds[i];
+        }
+    }
+
+    /**
+     * Pick count distinct flags at random, never any of the excluded
+     * ones, which are swapped to the end of the pool first.
+     *
+     * @param random        Random source
+     * @param excluded      Distinct flag ids that must not be picked, all in the pool
+     * @param excludedCount Flag ids used from excluded
+     * @param count         Flags to pick, at most size() - excludedCount
+     * @param out           Receives the flags
+     * @param offset        First entry of out to fill
+     * @throws IllegalArgumentException If the pool has fewer other flags
+     */
+    public void sampleExcluding(Random random, int[] excluded, int excludedCount, int count,
+                                int[] out, int offset) {
+        checkCount(count, this.size - excludedCount);
+        int end = this.size;
+        for (int i = 0; i < excludedCount; i++)
+            this.swap(this.positions[excluded[i]], --end);
+        for (int i = 0; i < count; i++) {
+            this.swap(i, i + random.nextInt(end - i));
+            out[offset + i] = this.flagIds[i];
+        }
+    }
+
+    // checked before the pool is reordered
+    private static void checkCount(int count, int available) {
+        if (count > available)
+            throw new IllegalArgumentException("Can't pick " + count + " of " + available + " flags");
+    }
+
+    private void swap(int i, int j) {
+        int flagId = this.flagIds[i];
+        this.flagIds[i] = this.flagIds[j];
+        this.flagIds[j] = flagId;
+        this.positions[this.flagIds[i]] = i;
+        this.positions[flagId] = j;
+    }
+}
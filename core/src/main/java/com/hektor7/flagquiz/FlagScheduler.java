@@ -0,0 +1,155 @@
+// FlagScheduler.java
+// Leitner boxes of the flags and weighted selection of the quiz flags
+package com.hektor7.flagquiz;
+
+import java.util.Random;
+
+/**
+ * Spaced repetition over flag ids. Each flag sits in a Leitner box:
+ * a flag guessed right at the first try moves up a box, a wrong guess
+ * sends it back to the first one. Quizzes draw flags with a weight
+ * that halves with each box, so mastered flags come back less often.
+ * Weights are kept in a Fenwick tree: a guess updates it in O(log n)
+ * and a quiz of k flags is drawn in O(k log n), with no rebuild.
+ * Not thread-safe.
+ */
+public class FlagScheduler {
+    public static final int BOXES = 5;
+
+    // weight of a flag in each box; new flags start in the first one
+    private static final int[] BOX_WEIGHTS = {16, 8, 4, 2, 1};
+
+    private final byte[] boxes; // Leitner box of each flag id
+    private final boolean[] missed; // guessed wrong since its last right guess
+    private final boolean[] enabled; // flag can be drawn
+    private final int[] tree; // Fenwick tree of the weights, 1-based
+    private int enabledCount; // flags that can be drawn
+    private int totalWeight; // weight of every enabled flag
+
+    /**
+     * Create a scheduler with every flag in the first box and disabled.
+     *
+     * @param capacity Number of flags in the catalog; flag ids are below it
+     */
+    public FlagScheduler(int capacity) {
+        this.boxes = new byte[capacity];
+        this.missed = new boolean[capacity];
+        this.enabled = new boolean[capacity];
+        this.tree = new int[capacity + 1];
+    }
+
+    /**
+     * Let quizzes draw flags, e.g. when a region is enabled.
+     *
+     * @param flagIds Flag ids
+     */
+    public void enable(int[] flagIds) {
+        for (int flagId : flagIds)
+            this.setEnabled(flagId, true);
+    }
+
+    /**
+     * Stop quizzes drawing flags, e.g. when a region is disabled.
+     *
+     * @param flagIds Flag ids
+     */
+    public void disable(int[] flagIds) {
+        for (int flagId : flagIds)
+            this.setEnabled(flagId, false);
+    }
+
+    /**
+     * @param flagId  Flag id
+     * @param enabled true if quizzes can draw the flag
+     */
+    public void setEnabled(int flagId, boolean enabled) {
+        if (this.enabled[flagId] != enabled) {
+            this.enabled[flagId] = enabled;
+            this.enabledCount += enabled ? 1 : -1;
+            int weight = BOX_WEIGHTS[this.boxes[flagId]];
+            this.add(flagId, enabled ? weight : -weight);
+        }
+    }
+
+    /**
+     * @return Number of flags quizzes can draw
+     */
+    public int getEnabledCount() {
+        return this.enabledCount;
+    }
+
+    /**
+     * Move a flag between boxes after a guess while it was shown.
+     *
+     * @param flagId  Flag id shown
+     * @param correct true if the guess was right
+     */
+    public void recordGuess(int flagId, boolean correct) {
+        int box = this.boxes[flagId];
+        int newBox;
+        if (!correct) {
+            newBox = 0;
+            this.missed[flagId] = true;
+        } else {
+            // only a right guess at the first try moves the flag up
+            newBox = this.missed[flagId] ? box : Math.min(box + 1, BOXES - 1);
+            this.missed[flagId] = false;
+        }
+        if (newBox != box) {
+            if (this.enabled[flagId])
+                this.add(flagId, BOX_WEIGHTS[newBox] - BOX_WEIGHTS[box]);
+            this.boxes[flagId] = (byte) newBox;
+        }
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Leitner box of the flag, from 0 to BOXES - 1
+     */
+    public int getBox(int flagId) {
+        return this.boxes[flagId];
+    }
+
+    /**
+     * Draw count distinct enabled flags, each with a probability
+     * proportional to the weight of its box.
+     *
+     * @param random Random source
+     * @param count  Flags to draw, at most getEnabledCount()
+     * @param out    Receives the flags in its first count entries
+     * @throws IllegalArgumentException If fewer flags are enabled
+     */
+    public void sample(Random random, int count, int[] out) {
+        // checked before the weights are taken out of the tree
+        if (count > this.enabledCount)
+            throw new IllegalArgumentException("Can't draw " + count + " of "
+                    + this.enabledCount + " flags");
+        for (int i = 0; i < count; i++) {
+            int flagId = this.find(random.nextInt(this.totalWeight));
+            out[i] = flagId;
+            this.add(flagId, -BOX_WEIGHTS[this.boxes[flagId]]); // no repeats
+        }
+        for (int i = 0; i < count; i++)
+            this.add(out[i], BOX_WEIGHTS[this.boxes[out[i]]]);
+    }
+
+    // add delta to the weight of a flag
+    private void add(int flagId, int delta) {
+        this.totalWeight += delta;
+        for (int i = flagId + 1; i < this.tree.length; i += i & -i)
+            this.tree[i] += delta;
+    }
+
+    // flag whose weight range holds target, from 0 to the total weight - 1
+    private int find(int target) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(this.boxes.length); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < this.tree.length && this.tree[next] <= target) {
+                position = next;
+                target -= this.tree[next];
+            }
+        }
+        return position; // the flag id is the 1-based position - 1
+    }
+}
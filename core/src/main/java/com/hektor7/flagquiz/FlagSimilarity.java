@@ -0,0 +1,97 @@
+// FlagSimilarity.java
+// The flags that look most alike, indexed at build time
+package com.hektor7.flagquiz;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads flags.sim: for each flag id, its nearest flags by color and
+ * layout, nearest first, with their distance. 128 is the median
+ * distance between two flags; lower is more alike. A lookup is an
+ * array read, so QuizEngine can draw lookalike distractors per
+ * question. Immutable.
+ */
+public final class FlagSimilarity {
+    // must match the build's FlagSimilarityWriter
+    public static final String SIMILARITY_FILE = "flags.sim";
+    private static final int MAGIC = 0x464C4753; // "FLGS"
+    private static final int VERSION = 1;
+
+    public static final int MEDIAN_DISTANCE = 128; // of two flags drawn at random
+    public static final int MAX_DISTANCE = 255;
+
+    private final int neighborCount; // neighbors per flag
+    private final short[] neighbors; // flag ids, neighborCount per flag
+    private final byte[] distances; // unsigned, same layout
+
+    /**
+     * Read an index written by the build's FlagSimilarityWriter. Layout,
+     * big-endian: magic, version, flag count and neighbors per flag as
+     * ints, then per flag id its neighbors, nearest first, each a flag
+     * id (short) and a distance (unsigned byte).
+     *
+     * @param in Stream holding the index
+     * @return Flag similarity
+     * @throws IOException If the stream isn't a supported index
+     */
+    public static FlagSimilarity read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION)
+            throw new IOException("Unsupported flag similarity index");
+        int flagCount = data.readInt();
+        int neighborCount = data.readInt();
+        if (flagCount < 0 || neighborCount < 0 || neighborCount > flagCount)
+            throw new IOException("Corrupt flag similarity index");
+
+        short[] neighbors = new short[flagCount * neighborCount];
+        byte[] distances = new byte[flagCount * neighborCount];
+        for (int i = 0; i < neighbors.length; i++) {
+            neighbors[i] = data.readShort();
+            distances[i] = data.readByte();
+            if (neighbors[i] < 0 || neighbors[i] >= flagCount)
+                throw new IOException("Corrupt flag similarity index");
+        }
+        return new FlagSimilarity(neighborCount, neighbors, distances);
+    }
+
+    /**
+     * @return Index without neighbors, used when the real one can't be read
+     */
+    public static FlagSimilarity empty() {
+        return new FlagSimilarity(0, new short[0], new byte[0]);
+    }
+
+    private FlagSimilarity(int neighborCount, short[] neighbors, byte[] distances) {
+        this.neighborCount = neighborCount;
+        this.neighbors = neighbors;
+        this.distances = distances;
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Number of neighbors of the flag, 0 if it isn't indexed
+     */
+    public int getNeighborCount(int flagId) {
+        return flagId * this.neighborCount < this.neighbors.length ? this.neighborCount : 0;
+    }
+
+    /**
+     * @param flagId Flag id
+     * @param rank   Neighbor, 0 for the nearest
+     * @return Flag id of the neighbor
+     */
+    public int getNeighbor(int flagId, int rank) {
+        return this.neighbors[flagId * this.neighborCount + rank];
+    }
+
+    /**
+     * @param flagId Flag id
+     * @param rank   Neighbor, 0 for the nearest
+     * @return Distance to the neighbor, from 0 to MAX_DISTANCE
+     */
+    public int getDistance(int flagId, int rank) {
+        return this.distances[flagId * this.neighborCount + rank] & 0xFF;
+    }
+}
@@ -0,0 +1,201 @@
+// FlagVectors.java
+// Flags stored as rectangles instead of images, generated at build time
+package com.hektor7.flagquiz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads flags.vec, the flags the build traced into gradient-filled
+ * rectangles. The other flags have no vector and are read from the
+ * flag pack as PNG. The file is small, so it is parsed once; the
+ * flags are immutable and can be drawn from any thread.
+ */
+public final class FlagVectors {
+    // must match the build's FlagVectorWriter
+    public static final String VECTOR_FILE = "flags.vec";
+    private static final int MAGIC = 0x464C4756; // "FLGV"
+    private static final int VERSION = 1;
+
+    private final VectorFlag[] flags; // by flag id, null if kept as PNG
+    private final int count; // flags with a vector
+
+    /**
+     * Read vectors written by the build's FlagVectorWriter. Layout:
+     * magic, version and flag count as big-endian ints, an offset per
+     * flag id, 0 for none, then per flag: varints width, height and
+     * rectangle count, then per rectangle its top and bottom ARGB
+     * colors as big-endian ints and varints left, top, width, height.
+     *
+     * @param in Stream holding the vectors
+     * @return Flag vectors
+     * @throws IOException If the stream isn't a supported vector file
+     */
+    public static FlagVectors read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int count;
+        while ((count = in.read(chunk)) > 0)
+            bytes.write(chunk, 0, count);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        if (buffer.capacity() < 12 || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported flag vectors");
+        return new FlagVectors(buffer);
+    }
+
+    /**
+     * @return Vectors without flags, used when the real ones can't be read
+     */
+    public static FlagVectors empty() {
+        return new FlagVectors(new VectorFlag[0]);
+    }
+
+    private FlagVectors(VectorFlag[] flags) {
+        this.flags = flags;
+        this.count = 0;
+    }
+
+    private FlagVectors(ByteBuffer buffer) throws IOException {
+        int flagCount = buffer.getInt(8);
+        if (flagCount < 0 || flagCount > (buffer.capacity() - 12) / 4)
+            throw new IOException("Corrupt flag vectors");
+        this.flags = new VectorFlag[flagCount];
+        int vectors = 0;
+        for (int id = 0; id < flagCount; id++) {
+            int offset = buffer.getInt(12 + 4 * id);
+            if (offset == 0)
+                continue;
+            if (offset < 12 + 4 * flagCount || offset >= buffer.capacity())
+                throw new IOException("Corrupt flag vector " + id);
+            buffer.position(offset);
+            try {
+                this.flags[id] = VectorFlag.read(buffer);
+            } catch (RuntimeException exception) {
+                throw new IOException("Corrupt flag vector " + id);
+            }
+            ++vectors;
+        }
+        this.count = vectors;
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Vector of the flag, or null if it is only in the flag pack
+     */
+    public VectorFlag getFlag(int flagId) {
+        return flagId < this.flags.length ? this.flags[flagId] : null;
+    }
+
+    /**
+     * @return Number of flags with a vector
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * One flag: rectangles in drawing order, in the pixels of the image
+     * it was traced from, each filled with a vertical gradient.
+     */
+    public static final class VectorFlag {
+        private final int width;
+        private final int height;
+        private final int[] rects; // left, top, width, height of each
+        private final int[] colors; // top, bottom ARGB color of each
+        private final boolean opaque;
+
+        private VectorFlag(int width, int height, int[] rects, int[] colors) {
+            this.width = width;
+            this.height = height;
+            this.rects = rects;
+            this.colors = colors;
+            boolean opaque = true;
+            for (int color : colors)
+                opaque &= (color >>> 24) == 0xFF;
+            this.opaque = opaque;
+        }
+
+        static VectorFlag read(ByteBuffer in) throws IOException {
+            int width = WireFormat.readVarint(in);
+            int height = WireFormat.readVarint(in);
+            int count = WireFormat.readVarint(in);
+            if (width <= 0 || height <= 0 || count < 0 || count > in.remaining() / 12)
+                throw new IOException("Bad flag vector");
+            int[] rects = new int[4 * count];
+            int[] colors = new int[2 * count];
+            for (int i = 0; i < count; i++) {
+                colors[2 * i] = in.getInt();
+                colors[2 * i + 1] = in.getInt();
+                for (int j = 0; j < 4; j++)
+                    rects[4 * i + j] = WireFormat.readVarint(in);
+                if (rects[4 * i] + rects[4 * i + 2] > width
+                        || rects[4 * i + 1] + rects[4 * i + 3] > height)
+                    throw new IOException("Rectangle outside the flag");
+            }
+            return new VectorFlag(width, height, rects, colors);
+        }
+
+        /**
+         * @return Width of the traced image, in pixels
+         */
+        public int getWidth() {
+            return this.width;
+        }
+
+        /**
+         * @return Height of the traced image, in pixels
+         */
+        public int getHeight() {
+            return this.height;
+        }
+
+        /**
+         * @return Whether every color is fully opaque
+         */
+        public boolean isOpaque() {
+            return this.opaque;
+        }
+
+        /**
+         * @return Number of rectangles
+         */
+        public int getRectCount() {
+            return this.colors.length / 2;
+        }
+
+        public int getLeft(int rect) {
+            return this.rects[4 * rect];
+        }
+
+        public int getTop(int rect) {
+            return this.rects[4 * rect + 1];
+        }
+
+        public int getRectWidth(int rect) {
+            return this.rects[4 * rect + 2];
+        }
+
+        public int getRectHeight(int rect) {
+            return this.rects[4 * rect + 3];
+        }
+
+        /**
+         * @param rect Rectangle index
+         * @return ARGB color of its top row
+         */
+        public int getTopColor(int rect) {
+            return this.colors[2 * rect];
+        }
+
+        /**
+         * @param rect Rectangle index
+         * @return ARGB color of its bottom row
+         */
+        public int getBottomColor(int rect) {
+            return this.colors[2 * rect + 1];
+        }
+    }
+}
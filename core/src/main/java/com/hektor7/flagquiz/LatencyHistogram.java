@@ -0,0 +1,103 @@
+// LatencyHistogram.java
+// Latest latency samples of a quiz phase and their percentiles
+package com.hektor7.flagquiz;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latest samples of a latency, in a fixed-size ring so that
+ * recording never allocates. Percentiles are computed on demand, by
+ * the nearest-rank method over the samples kept. Not thread-safe.
+ */
+public class LatencyHistogram {
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private final long[] samples; // ring of the latest samples
+    private long count; // samples recorded, including overwritten ones
+    private long max; // largest sample recorded
+
+    /**
+     * Create a histogram keeping the latest DEFAULT_CAPACITY samples.
+     */
+    public LatencyHistogram() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Samples kept
+     */
+    public LatencyHistogram(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    /**
+     * @param value Latency, in any unit as long as it is always the same
+     */
+    public void record(long value) {
+        this.samples[(int) (this.count % this.samples.length)] = value;
+        ++this.count;
+        if (value > this.max)
+            this.max = value;
+    }
+
+    /**
+     * Drop every sample.
+     */
+    public void clear() {
+        this.count = 0;
+        this.max = 0;
+    }
+
+    /**
+     * @return Samples recorded since the last clear
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return Largest sample recorded since the last clear, 0 if none
+     */
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * @param percentile Percentile, from 0 to 100, e.g. 95
+     * @return Value of the percentile over the samples kept, 0 if none
+     */
+    public long getPercentile(double percentile) {
+        return this.getPercentiles(new double[]{percentile})[0];
+    }
+
+    /**
+     * Compute several percentiles, sorting the samples once.
+     *
+     * @param percentiles Percentiles, from 0 to 100
+     * @return Value of each percentile, 0 if there are no samples
+     */
+    public long[] getPercentiles(double[] percentiles) {
+        int size = (int) Math.min(this.count, this.samples.length);
+        long[] values = new long[percentiles.length];
+        if (size == 0)
+            return values;
+
+        long[] sorted = Arrays.copyOf(this.samples, size);
+        Arrays.sort(sorted);
+        for (int i = 0; i < percentiles.length; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100 * size);
+            values[i] = sorted[Math.max(0, Math.min(size - 1, rank - 1))];
+        }
+        return values;
+    }
+
+    /**
+     * @return e.g. "n=120 p50=8 p95=14 p99=31 max=40"
+     */
+    @Override
+    public String toString() {
+        long[] values = this.getPercentiles(new double[]{50, 95, 99});
+        return "n=" + this.count + " p50=" + values[0] + " p95=" + values[1]
+                + " p99=" + values[2] + " max=" + this.max;
+    }
+}
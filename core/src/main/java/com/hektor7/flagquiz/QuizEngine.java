@@ -0,0 +1,407 @@
+// QuizEngine.java
+// Quiz state and rules, independent of the UI
+package com.hektor7.flagquiz;
+
+import java.util.Random;
+
+/**
+ * Runs a quiz over flag ids: picks the flags of the quiz and the
+ * answers of each question, and checks guesses with an int compare.
+ * It has no Android dependencies, so it can also run headless on the
+ * JVM. Not thread-safe.
+ */
+public class QuizEngine {
+    public static final int COLUMNS = 3; // answers per row
+    public static final int MAX_CHOICES = 9; // 3 rows of answers
+
+    private final FlagPool flagPool; // flag ids of the enabled regions
+    private final Random random; // used to randomize the quiz
+    private final int[] quizFlags; // flag ids of the flags in current quiz
+    private final int[] answers; // flag id of each answer of the question
+    private FlagScheduler scheduler; // told about every guess, may be null
+    private boolean adaptive; // the scheduler draws the quiz flags
+    private FlagSimilarity similarity; // lookalike wrong answers, null for random ones
+    private int maxDistractorDistance; // of a lookalike to the current flag
+    private int[] lookalikes; // scratch for setupQuestion, by capacity
+    private int choices = COLUMNS; // answers per question
+    private int questionChoices; // answers of the current question
+    private int flagsInQuizSetting; // flags per quiz chosen, 0 for all
+    private int flagsInQuiz; // number of flags in current quiz
+    private int correctAnswer; // flag id of the current flag
+    private int question; // index of the current question
+    private int guessedAnswers; // bit of each answer guessed in the question
+    private int correctAnswers; // number of correct guesses
+    private int totalGuesses; // number of guesses made
+
+    /**
+     * Create an engine with no flags.
+     *
+     * @param capacity Number of flags in the catalog; flag ids are below it
+     * @param random   Random source, reseeded by each quiz
+     */
+    public QuizEngine(int capacity, Random random) {
+        this.flagPool = new FlagPool(capacity);
+        this.random = random;
+        this.quizFlags = new int[capacity];
+        this.answers = new int[MAX_CHOICES];
+    }
+
+    /**
+     * Add flags the quizzes can use, e.g. when a region is enabled.
+     *
+     * @param flagIds Flag ids not in the quiz yet
+     */
+    public void addFlags(int[] flagIds) {
+        this.flagPool.addAll(flagIds);
+        if (this.scheduler != null)
+            this.scheduler.enable(flagIds);
+    }
+
+    /**
+     * Remove flags from the quizzes, e.g. when a region is disabled.
+     *
+     * @param flagIds Flag ids in the quiz
+     */
+    public void removeFlags(int[] flagIds) {
+        this.flagPool.removeAll(flagIds);
+        if (this.scheduler != null)
+            this.scheduler.disable(flagIds);
+    }
+
+    /**
+     * @return Number of flags the quizzes can use
+     */
+    public int getAvailableFlags() {
+        return this.flagPool.size();
+    }
+
+    /**
+     * Tell a spaced repetition scheduler about every guess.
+     *
+     * @param scheduler Scheduler of the catalog's flags, or null;
+     *                  its enabled flags are replaced by the pool's
+     */
+    public void setScheduler(FlagScheduler scheduler) {
+        if (scheduler != null) {
+            // enable exactly the flags of the pool
+            for (int flagId = 0; flagId < this.quizFlags.length; flagId++)
+                scheduler.setEnabled(flagId, false);
+            for (int i = 0; i < this.flagPool.size(); i++)
+                scheduler.setEnabled(this.flagPool.get(i), true);
+        }
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Choose how the next quizzes draw their flags.
+     *
+     * @param adaptive true to draw with the scheduler's weights, when
+     *                 there is one, false to draw uniformly
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Choose how wrong answers are drawn, from the next question.
+     *
+     * @param similarity  Similarity of the catalog's flags to draw the
+     *                    wrong answers among the flags that look like
+     *                    the current one, or null to draw them uniformly
+     * @param maxDistance Farthest a lookalike may be, from 0 to
+     *                    FlagSimilarity.MAX_DISTANCE; the rest of the
+     *                    wrong answers are drawn uniformly
+     */
+    public void setDistractorSimilarity(FlagSimilarity similarity, int maxDistance) {
+        this.similarity = similarity;
+        this.maxDistractorDistance = maxDistance;
+        if (similarity != null && this.lookalikes == null)
+            this.lookalikes = new int[this.quizFlags.length + 1];
+    }
+
+    /**
+     * Set the number of answers per question, used from the next question.
+     *
+     * @param choices 3, 6 or 9
+     */
+    public void setChoices(int choices) {
+        this.choices = choices;
+    }
+
+    /**
+     * @return Answers per question
+     */
+    public int getChoices() {
+        return this.choices;
+    }
+
+    /**
+     * Set the number of flags per quiz, used from the next quiz.
+     *
+     * @param flagsInQuizSetting Flags per quiz, 0 for all the flags
+     */
+    public void setFlagsInQuiz(int flagsInQuizSetting) {
+        this.flagsInQuizSetting = flagsInQuizSetting;
+    }
+
+    /**
+     * Start a quiz and its first question. With the same flags and
+     * settings, a seed always gives the same quiz.
+     *
+     * @param seed Seed of the quiz
+     */
+    public void startQuiz(long seed) {
+        this.random.setSeed(seed);
+        this.correctAnswers = 0;
+        this.totalGuesses = 0;
+
+        // a region may have fewer flags than the chosen quiz size
+        int numberOfFlags = this.flagPool.size();
+        this.flagsInQuiz = this.flagsInQuizSetting == 0 ? numberOfFlags
+                : Math.min(this.flagsInQuizSetting, numberOfFlags);
+
+        // draw flagsInQuiz distinct flags in O(flagsInQuiz)
+        this.flagPool.sort(); // same seed, same quiz
+        if (this.adaptive && this.scheduler != null) {
+            // same seed and same Leitner boxes, same quiz
+            this.scheduler.sample(this.random, this.flagsInQuiz, this.quizFlags);
+        } else {
+            this.flagPool.sample(this.random, this.flagsInQuiz, this.quizFlags);
+        }
+
+        this.setupQuestion();
+    }
+
+    /**
+     * Move to the next question after a correct guess.
+     */
+    public void nextQuestion() {
+        this.setupQuestion();
+    }
+
+    /**
+     * Choose the wrong answers and the location of the correct one.
+     * Only the needed wrong answers are drawn and the correct flag is
+     * excluded from the draw, so it is among the answers exactly once.
+     */
+    private void setupQuestion() {
+        this.question = this.correctAnswers;
+        this.guessedAnswers = 0;
+        this.correctAnswer = this.quizFlags[this.question];
+        this.questionChoices = this.choices;
+        int correctIndex = this.random.nextInt(this.choices);
+
+        // draw choices - 1 wrong answers, then swap the correct one in
+        if (this.similarity == null) {
+            this.flagPool.sampleExcluding(this.random, this.correctAnswer,
+                    this.choices - 1, this.answers);
+        } else {
+            this.drawLookalikes(this.choices - 1);
+        }
+        this.answers[this.choices - 1] = this.answers[correctIndex];
+        this.answers[correctIndex] = this.correctAnswer;
+    }
+
+    /**
+     * Draw wrong answers among the pool's flags close enough to the
+     * current one, then the rest uniformly, in random order. The
+     * neighbors are precomputed, so this is O(neighbors + count).
+     *
+     * @param count Wrong answers to draw into answers
+     */
+    private void drawLookalikes(int count) {
+        int flagId = this.correctAnswer;
+        int candidates = 0;
+        for (int rank = 0; rank < this.similarity.getNeighborCount(flagId); rank++) {
+            if (this.similarity.getDistance(flagId, rank) > this.maxDistractorDistance)
+                break; // nearest first
+            int neighbor = this.similarity.getNeighbor(flagId, rank);
+            if (this.flagPool.contains(neighbor))
+                this.lookalikes[candidates++] = neighbor;
+        }
+
+        // partial Fisher-Yates over the candidates
+        int picked = Math.min(candidates, count);
+        for (int i = 0; i < picked; i++) {
+            int j = i + this.random.nextInt(candidates - i);
+            int lookalike = this.lookalikes[j];
+            this.lookalikes[j] = this.lookalikes[i];
+            this.lookalikes[i] = lookalike;
+            this.answers[i] = lookalike;
+        }
+
+        // the rest excludes the lookalikes and the current flag
+        this.lookalikes[picked] = flagId;
+        this.flagPool.sampleExcluding(this.random, this.lookalikes, picked + 1,
+                count - picked, this.answers, picked);
+
+        // lookalikes shouldn't always come first
+        for (int i = count - 1; i > 0; i--) {
+            int j = this.random.nextInt(i + 1);
+            int answer = this.answers[j];
+            this.answers[j] = this.answers[i];
+            this.answers[i] = answer;
+        }
+    }
+
+    /**
+     * Guess an answer of the current question.
+     *
+     * @param answerIndex Answer, from 0 to getChoices() - 1
+     * @return true if it is the correct answer
+     */
+    public boolean guess(int answerIndex) {
+        ++this.totalGuesses;
+        this.guessedAnswers |= 1 << answerIndex;
+        boolean correct = this.answers[answerIndex] == this.correctAnswer;
+        if (this.scheduler != null)
+            this.scheduler.recordGuess(this.correctAnswer, correct);
+        if (correct)
+            ++this.correctAnswers;
+        return correct;
+    }
+
+    /**
+     * @return true once the current flag was guessed
+     */
+    public boolean isQuestionAnswered() {
+        return this.correctAnswers > this.question;
+    }
+
+    /**
+     * @param answerIndex Answer, from 0 to getChoices() - 1
+     * @return true if the answer was guessed in the current question
+     */
+    public boolean isGuessed(int answerIndex) {
+        return (this.guessedAnswers & (1 << answerIndex)) != 0;
+    }
+
+    /**
+     * @return true once every flag of the quiz was guessed
+     */
+    public boolean isQuizOver() {
+        return this.correctAnswers == this.flagsInQuiz;
+    }
+
+    /**
+     * @param answerIndex Answer, from 0 to getChoices() - 1
+     * @return Flag id of the answer
+     */
+    public int getAnswer(int answerIndex) {
+        return this.answers[answerIndex];
+    }
+
+    /**
+     * @return Answer holding the current flag, from 0 to getChoices() - 1
+     */
+    public int getCorrectIndex() {
+        int answerIndex = 0;
+        while (this.answers[answerIndex] != this.correctAnswer)
+            ++answerIndex;
+        return answerIndex;
+    }
+
+    /**
+     * @return Flag id of the current flag
+     */
+    public int getCorrectAnswer() {
+        return this.correctAnswer;
+    }
+
+    /**
+     * @param question Question, from 0 to getFlagsInQuiz() - 1
+     * @return Flag id shown in that question
+     */
+    public int getQuizFlag(int question) {
+        return this.quizFlags[question];
+    }
+
+    /**
+     * @return Flag ids of the quiz in question order, shared
+     */
+    public int[] getQuizFlags() {
+        return this.quizFlags;
+    }
+
+    /**
+     * @return Number of flags in the current quiz
+     */
+    public int getFlagsInQuiz() {
+        return this.flagsInQuiz;
+    }
+
+    /**
+     * @return Index of the current question, starting at 0
+     */
+    public int getQuestion() {
+        return this.question;
+    }
+
+    /**
+     * @return Number of correct guesses in the current quiz
+     */
+    public int getCorrectAnswers() {
+        return this.correctAnswers;
+    }
+
+    /**
+     * @return Number of guesses in the current quiz
+     */
+    public int getTotalGuesses() {
+        return this.totalGuesses;
+    }
+
+    /**
+     * Save the current quiz compactly, e.g. into a Bundle.
+     * Layout: flags in quiz, question, correct answers, total guesses,
+     * guessed answers, answers of the question, the answers, then the
+     * quiz flags.
+     *
+     * @return Quiz state for restoreQuiz
+     */
+    public int[] saveQuiz() {
+        int[] state = new int[6 + this.questionChoices + this.flagsInQuiz];
+        state[0] = this.flagsInQuiz;
+        state[1] = this.question;
+        state[2] = this.correctAnswers;
+        state[3] = this.totalGuesses;
+        state[4] = this.guessedAnswers;
+        state[5] = this.questionChoices;
+        System.arraycopy(this.answers, 0, state, 6, this.questionChoices);
+        System.arraycopy(this.quizFlags, 0, state, 6 + this.questionChoices, this.flagsInQuiz);
+        return state;
+    }
+
+    /**
+     * Go back to a quiz saved by saveQuiz, at the same question. The
+     * next questions draw new wrong answers, unless the random source
+     * is in the state it was when the quiz was saved.
+     *
+     * @param state Quiz state
+     * @return false if the state doesn't fit the current flags and
+     *         choices, e.g. they changed since; the engine is then unchanged
+     */
+    public boolean restoreQuiz(int[] state) {
+        if (state == null || state.length < 6 || state[5] != this.choices
+                || state.length != 6 + state[5] + state[0]
+                || state[1] < 0 || state[1] >= state[0]
+                || state[2] < state[1] || state[2] > state[1] + 1)
+            return false;
+        for (int i = 6; i < state.length; i++) {
+            if (state[i] < 0 || state[i] >= this.quizFlags.length
+                    || !this.flagPool.contains(state[i]))
+                return false;
+        }
+
+        this.flagsInQuiz = state[0];
+        this.question = state[1];
+        this.correctAnswers = state[2];
+        this.totalGuesses = state[3];
+        this.guessedAnswers = state[4];
+        this.questionChoices = this.choices;
+        System.arraycopy(state, 6, this.answers, 0, this.choices);
+        System.arraycopy(state, 6 + this.choices, this.quizFlags, 0, this.flagsInQuiz);
+        this.correctAnswer = this.quizFlags[this.question];
+        return true;
+    }
+}
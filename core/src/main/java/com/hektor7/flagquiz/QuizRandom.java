@@ -0,0 +1,67 @@
+// QuizRandom.java
+// Fast, seedable random source used to randomize the quiz
+package com.hektor7.flagquiz;
+
+import java.util.Random;
+
+/**
+ * SplitMix64 generator behind the java.util.Random interface, so any
+ * Random (e.g. SecureRandom) can be plugged in instead. Not
+ * cryptographic and not thread-safe: the quiz only uses it on the main
+ * thread. Seeding never blocks, and the same seed gives the same
+ * sequence on every device.
+ */
+public class QuizRandom extends Random {
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long seed; // seed of the current sequence
+    private long state;
+
+    /**
+     * Create a generator with a seed taken from the clock.
+     */
+    public QuizRandom() {
+        this(System.nanoTime() * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Create a generator that replays the sequence of a seed.
+     *
+     * @param seed Seed
+     */
+    public QuizRandom(long seed) {
+        super(seed); // calls setSeed
+    }
+
+    /**
+     * Restart the sequence of a seed.
+     *
+     * @param seed Seed
+     */
+    @Override
+    public synchronized void setSeed(long seed) {
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    /**
+     * @return Seed of the current sequence
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (this.nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        long z = (this.state += GOLDEN_GAMMA);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,105 @@
+// QuizTimer.java
+// Reaction time of each question of a quiz, on a monotonic clock
+package com.hektor7.flagquiz;
+
+/**
+ * Times each question from the moment its flag is shown to its correct
+ * guess, wrong guesses included. A question answered before its flag
+ * was shown isn't timed. Times are passed in as nanoseconds of
+ * a monotonic clock (System.nanoTime()) and kept in microseconds, so
+ * the timer itself never reads a clock and replays deterministically.
+ * Not thread-safe.
+ */
+public class QuizTimer {
+    private final LatencyHistogram reactionTimes; // microseconds per question
+    private long questionStartNanos; // when the current flag was shown
+    private boolean shown; // the current question's flag was shown
+    private boolean timing; // shown and not answered yet
+    private long totalMicros; // sum of the reaction times
+
+    /**
+     * @param capacity Most questions in a quiz, e.g. the catalog size
+     */
+    public QuizTimer(int capacity) {
+        this.reactionTimes = new LatencyHistogram(Math.max(1, capacity));
+    }
+
+    /**
+     * Forget every time, e.g. when a quiz starts.
+     */
+    public void reset() {
+        this.reactionTimes.clear();
+        this.shown = false;
+        this.timing = false;
+        this.totalMicros = 0;
+    }
+
+    /**
+     * Move to the next question, whose flag isn't shown yet.
+     */
+    public void questionChanged() {
+        this.shown = false;
+        this.timing = false;
+    }
+
+    /**
+     * Start timing the current question. Showing it again, e.g. after
+     * a rotation, doesn't restart it.
+     *
+     * @param nanos Time its flag was shown
+     */
+    public void questionShown(long nanos) {
+        if (!this.shown) {
+            this.questionStartNanos = nanos;
+            this.shown = true;
+            this.timing = true;
+        }
+    }
+
+    /**
+     * Stop timing the current question.
+     *
+     * @param nanos Time of its correct guess
+     * @return Reaction time in microseconds, -1 if the question wasn't
+     *         timed: its flag wasn't shown yet, or it was answered already
+     */
+    public long questionAnswered(long nanos) {
+        if (!this.timing) {
+            return -1;
+        }
+        this.timing = false;
+        long micros = (nanos - this.questionStartNanos) / 1000;
+        this.reactionTimes.record(micros);
+        this.totalMicros += micros;
+        return micros;
+    }
+
+    /**
+     * @return Questions timed since the last reset
+     */
+    public int getQuestionCount() {
+        return (int) this.reactionTimes.getCount();
+    }
+
+    /**
+     * @return Sum of the reaction times, in microseconds
+     */
+    public long getTotalMicros() {
+        return this.totalMicros;
+    }
+
+    /**
+     * @return Slowest reaction time, in microseconds
+     */
+    public long getMaxMicros() {
+        return this.reactionTimes.getMax();
+    }
+
+    /**
+     * @param percentiles Percentiles, from 0 to 100
+     * @return Reaction time of each percentile, in microseconds
+     */
+    public long[] getPercentiles(double[] percentiles) {
+        return this.reactionTimes.getPercentiles(percentiles);
+    }
+}
@@ -0,0 +1,178 @@
+// WireFormat.java
+// Compact binary encoding of the quiz messages
+package com.hektor7.flagquiz;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Varints (7 bits per byte, least significant group first, the high
+ * bit set on every byte but the last), zigzag for signed values, and
+ * batches of answer events. In a batch, each question is a delta from
+ * the previous event's, each shown time a delta from the previous
+ * event's answered time and each answered time a delta from its shown
+ * time, so a typical answer takes 6 to 8 bytes.
+ */
+public final class WireFormat {
+    public static final int MAX_VARINT_SIZE = 5;
+    public static final int MAX_VARLONG_SIZE = 10;
+
+    // largest encoding of one event in a batch
+    private static final int MAX_EVENT_SIZE = 3 * MAX_VARINT_SIZE + 2 * MAX_VARLONG_SIZE;
+
+    private WireFormat() {
+    }
+
+    /**
+     * @param out   Destination
+     * @param value Value, read as unsigned
+     */
+    public static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * @param in Source, moved past the value
+     * @return Value
+     * @throws IOException If the varint is truncated or too long
+     */
+    public static int readVarint(ByteBuffer in) throws IOException {
+        long value = readVarlong(in, MAX_VARINT_SIZE);
+        if ((value >>> 32) != 0)
+            throw new IOException("Varint overflow");
+        return (int) value;
+    }
+
+    /**
+     * @param out   Destination
+     * @param value Value, read as unsigned
+     */
+    public static void writeVarlong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * @param in Source, moved past the value
+     * @return Value
+     * @throws IOException If the varint is truncated or too long
+     */
+    public static long readVarlong(ByteBuffer in) throws IOException {
+        return readVarlong(in, MAX_VARLONG_SIZE);
+    }
+
+    private static long readVarlong(ByteBuffer in, int maxSize) throws IOException {
+        long value = 0;
+        try {
+            for (int i = 0; i < maxSize; i++) {
+                byte b = in.get();
+                value |= (long) (b & 0x7F) << (7 * i);
+                if (b >= 0)
+                    return value;
+            }
+        } catch (BufferUnderflowException exception) {
+            throw new IOException("Truncated varint");
+        }
+        throw new IOException("Varint too long");
+    }
+
+    /**
+     * @param value Signed value
+     * @return Value with small magnitudes, positive or not, near 0
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * @param value Value from zigZag
+     * @return Signed value
+     */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @param value Value, read as unsigned
+     * @return Bytes writeVarint writes for it
+     */
+    public static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            ++size;
+        }
+        return size;
+    }
+
+    /**
+     * @param count Events in a batch
+     * @return Most bytes writeAnswers writes for them
+     */
+    public static int maxAnswersSize(int count) {
+        return MAX_VARINT_SIZE + count * MAX_EVENT_SIZE;
+    }
+
+    /**
+     * Write a batch of answer events.
+     *
+     * @param out    Destination, with maxAnswersSize(count) bytes left
+     * @param events Events; consecutive ones compress best
+     * @param offset First event to write
+     * @param count  Number of events to write
+     */
+    public static void writeAnswers(ByteBuffer out, AnswerEvent[] events, int offset, int count) {
+        writeVarint(out, count);
+        int question = 0;
+        long time = 0;
+        for (int i = offset; i < offset + count; i++) {
+            AnswerEvent event = events[i];
+            if (event.answeredMicros < event.shownMicros)
+                throw new IllegalArgumentException("Answered before shown: " + event);
+            writeVarlong(out, zigZag(event.question - question));
+            writeVarint(out, event.imageRef);
+            writeVarint(out, event.answerMask);
+            writeVarlong(out, zigZag(event.shownMicros - time));
+            writeVarlong(out, event.answeredMicros - event.shownMicros);
+            question = event.question;
+            time = event.answeredMicros;
+        }
+    }
+
+    /**
+     * Read a batch of answer events.
+     *
+     * @param in        Source, moved past the batch
+     * @param maxEvents Largest batch accepted
+     * @return Events
+     * @throws IOException If the batch is malformed or too large
+     */
+    public static AnswerEvent[] readAnswers(ByteBuffer in, int maxEvents) throws IOException {
+        int count = readVarint(in);
+        if (count < 0 || count > maxEvents)
+            throw new IOException("Bad answer count " + count);
+        AnswerEvent[] events = new AnswerEvent[count];
+        long question = 0;
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            question += unZigZag(readVarlong(in));
+            int imageRef = readVarint(in);
+            int answerMask = readVarint(in);
+            long shown = time + unZigZag(readVarlong(in));
+            long answered = shown + readVarlong(in);
+            if (question < 0 || question > Integer.MAX_VALUE || answered < shown)
+                throw new IOException("Bad answer event");
+            events[i] = new AnswerEvent((int) question, imageRef, answerMask, shown, answered);
+            time = answered;
+        }
+        return events;
+    }
+}
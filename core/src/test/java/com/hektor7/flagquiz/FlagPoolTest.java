@@ -0,0 +1,172 @@
+// FlagPoolTest.java
+// Sampling and removal of the flag pool
+package com.hektor7.flagquiz;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlagPoolTest {
+    private static final int CAPACITY = 50;
+
+    @Test
+    public void samplesAreDistinctPoolFlags() {
+        Random random = new QuizRandom(3);
+        FlagPool pool = newPool(0, 40);
+        int[] out = new int[CAPACITY];
+        for (int round = 0; round < 1000; round++) {
+            int count = random.nextInt(pool.size() + 1);
+            pool.sample(random, count, out);
+            assertDistinctIn(pool, out, 0, count);
+            assertConsistent(pool);
+        }
+    }
+
+    @Test
+    public void sampleOfWholePoolIsPermutation() {
+        FlagPool pool = newPool(10, 30);
+        int[] out = new int[CAPACITY];
+        pool.sample(new QuizRandom(5), pool.size(), out);
+        assertDistinctIn(pool, out, 0, pool.size());
+        assertConsistent(pool);
+    }
+
+    @Test
+    public void tooLargeSamplesAreRejected() {
+        FlagPool pool = newPool(0, 10);
+        int[] before = flags(pool);
+        int[] out = new int[CAPACITY];
+        try {
+            pool.sample(new QuizRandom(1), 11, out);
+            fail("Sampled more flags than the pool has");
+        } catch (IllegalArgumentException expected) {
+            // count > size
+        }
+        try {
+            pool.sampleExcluding(new QuizRandom(1), 4, 10, out);
+            fail("Sampled the excluded flag");
+        } catch (IllegalArgumentException expected) {
+            // count > size - 1
+        }
+        try {
+            pool.sampleExcluding(new QuizRandom(1), new int[]{1, 2, 3}, 3, 8, out, 0);
+            fail("Sampled an excluded flag");
+        } catch (IllegalArgumentException expected) {
+            // count > size - excludedCount
+        }
+        assertEquals(before.length, pool.size());
+        for (int i = 0; i < before.length; i++)
+            assertEquals(before[i], pool.get(i)); // untouched
+    }
+
+    @Test
+    public void excludedFlagIsNeverSampled() {
+        Random random = new QuizRandom(7);
+        FlagPool pool = newPool(0, 20);
+        int[] out = new int[CAPACITY];
+        for (int round = 0; round < 1000; round++) {
+            int excluded = pool.get(random.nextInt(pool.size()));
+            int count = random.nextInt(pool.size());
+            pool.sampleExcluding(random, excluded, count, out);
+            assertDistinctIn(pool, out, 0, count);
+            for (int i = 0; i < count; i++)
+                assertTrue(out[i] != excluded);
+            assertTrue(pool.contains(excluded));
+            assertConsistent(pool);
+        }
+    }
+
+    @Test
+    public void excludedFlagsAreNeverSampled() {
+        Random random = new QuizRandom(9);
+        FlagPool pool = newPool(0, 20);
+        int[] excluded = new int[5];
+        int[] out = new int[CAPACITY];
+        for (int round = 0; round < 1000; round++) {
+            int excludedCount = 1 + random.nextInt(excluded.length);
+            pool.sample(random, excludedCount, excluded);
+            int count = random.nextInt(pool.size() - excludedCount + 1);
+            int offset = random.nextInt(3);
+            pool.sampleExcluding(random, excluded, excludedCount, count, out, offset);
+            assertDistinctIn(pool, out, offset, count);
+            for (int i = offset; i < offset + count; i++) {
+                for (int j = 0; j < excludedCount; j++)
+                    assertTrue(out[i] != excluded[j]);
+            }
+            assertConsistent(pool);
+        }
+    }
+
+    @Test
+    public void removedFlagsAreNeverSampled() {
+        Random random = new QuizRandom(13);
+        FlagPool pool = newPool(0, CAPACITY);
+        pool.sample(random, 30, new int[CAPACITY]); // scramble the positions
+        int[] removed = {0, 7, 49, 23, 24, 25};
+        pool.removeAll(removed);
+        assertEquals(CAPACITY - removed.length, pool.size());
+        for (int flagId : removed)
+            assertFalse(pool.contains(flagId));
+        assertConsistent(pool);
+
+        int[] out = new int[CAPACITY];
+        for (int round = 0; round < 100; round++) {
+            pool.sample(random, pool.size(), out);
+            for (int i = 0; i < pool.size(); i++) {
+                for (int flagId : removed)
+                    assertTrue(out[i] != flagId);
+            }
+            pool.sampleExcluding(random, pool.get(0), pool.size() - 1, out);
+            assertDistinctIn(pool, out, 0, pool.size() - 1);
+        }
+
+        pool.addAll(removed);
+        pool.sort();
+        for (int i = 0; i < CAPACITY; i++)
+            assertEquals(i, pool.get(i));
+        assertConsistent(pool);
+    }
+
+    // pool of the flag ids from first to end - 1
+    private static FlagPool newPool(int first, int end) {
+        FlagPool pool = new FlagPool(CAPACITY);
+        int[] ids = new int[end - first];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = first + i;
+        pool.addAll(ids);
+        return pool;
+    }
+
+    private static int[] flags(FlagPool pool) {
+        int[] flags = new int[pool.size()];
+        for (int i = 0; i < flags.length; i++)
+            flags[i] = pool.get(i);
+        return flags;
+    }
+
+    private static void assertDistinctIn(FlagPool pool, int[] out, int offset, int count) {
+        boolean[] seen = new boolean[CAPACITY];
+        for (int i = offset; i < offset + count; i++) {
+            assertTrue(pool.contains(out[i]));
+            assertFalse(seen[out[i]]);
+            seen[out[i]] = true;
+        }
+    }
+
+    // each flag of the pool is found at its position, and no other is
+    private static void assertConsistent(FlagPool pool) {
+        int members = 0;
+        for (int flagId = 0; flagId < CAPACITY; flagId++) {
+            if (pool.contains(flagId))
+                ++members;
+        }
+        assertEquals(pool.size(), members);
+        for (int i = 0; i < pool.size(); i++)
+            assertTrue(pool.contains(pool.get(i)));
+    }
+}
@@ -0,0 +1,215 @@
+// FlagSchedulerTest.java
+// Leitner boxes and weighted draws of the flag scheduler
+package com.hektor7.flagquiz;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlagSchedulerTest {
+    // capacities around powers of two, where the tree descent turns
+    private static final int[] CAPACITIES = {1, 2, 3, 4, 5, 7, 8, 9, 16, 17, 50};
+
+    @Test
+    public void drawFindsFlagOfEveryTarget() {
+        Random random = new QuizRandom(17);
+        for (int capacity : CAPACITIES) {
+            FlagScheduler scheduler = randomScheduler(random, capacity);
+            assertDrawsByWeight(scheduler, capacity);
+        }
+    }
+
+    @Test
+    public void firstTryRightGuessPromotes() {
+        FlagScheduler scheduler = new FlagScheduler(3);
+        assertEquals(0, scheduler.getBox(1));
+        for (int box = 1; box < FlagScheduler.BOXES; box++) {
+            scheduler.recordGuess(1, true);
+            assertEquals(box, scheduler.getBox(1));
+        }
+        scheduler.recordGuess(1, true);
+        assertEquals(FlagScheduler.BOXES - 1, scheduler.getBox(1)); // last box
+        assertEquals(0, scheduler.getBox(0));
+        assertEquals(0, scheduler.getBox(2));
+    }
+
+    @Test
+    public void wrongGuessDemotes() {
+        FlagScheduler scheduler = new FlagScheduler(1);
+        scheduler.recordGuess(0, true);
+        scheduler.recordGuess(0, true);
+        assertEquals(2, scheduler.getBox(0));
+        scheduler.recordGuess(0, false);
+        assertEquals(0, scheduler.getBox(0));
+        scheduler.recordGuess(0, true); // right after a miss: stays
+        assertEquals(0, scheduler.getBox(0));
+        scheduler.recordGuess(0, true);
+        assertEquals(1, scheduler.getBox(0));
+    }
+
+    @Test
+    public void guessesUpdateWeights() {
+        Random random = new QuizRandom(19);
+        FlagScheduler scheduler = randomScheduler(random, 20);
+        for (int round = 0; round < 200; round++) {
+            scheduler.recordGuess(random.nextInt(20), random.nextBoolean());
+            if (round % 10 == 0)
+                scheduler.setEnabled(random.nextInt(20), random.nextBoolean());
+            assertDrawsByWeight(scheduler, 20);
+        }
+    }
+
+    @Test
+    public void sampleRestoresWeights() {
+        Random random = new QuizRandom(23);
+        for (int capacity : CAPACITIES) {
+            FlagScheduler scheduler = randomScheduler(random, capacity);
+            int enabledCount = scheduler.getEnabledCount();
+            int[] out = new int[capacity];
+            ScriptedRandom scripted = new ScriptedRandom(random);
+            scheduler.sample(scripted, enabledCount, out);
+
+            // each draw took the flag drawn before it out of the total
+            int total = totalWeight(scheduler);
+            boolean[] drawn = new boolean[capacity];
+            for (int i = 0; i < enabledCount; i++) {
+                assertEquals(total, scripted.bounds[i]);
+                assertFalse(drawn[out[i]]);
+                drawn[out[i]] = true;
+                total -= weight(scheduler, out[i]);
+            }
+            assertEquals(0, total);
+            assertDrawsByWeight(scheduler, capacity); // all back in
+        }
+    }
+
+    @Test
+    public void sameSeedDrawsSameFlags() {
+        FlagScheduler first = randomScheduler(new QuizRandom(29), 50);
+        FlagScheduler second = randomScheduler(new QuizRandom(29), 50);
+        int count = first.getEnabledCount() / 2;
+        int[] firstOut = new int[50];
+        int[] secondOut = new int[50];
+        first.sample(new QuizRandom(31), count, firstOut);
+        second.sample(new QuizRandom(31), count, secondOut);
+        for (int i = 0; i < count; i++)
+            assertEquals(firstOut[i], secondOut[i]);
+    }
+
+    @Test
+    public void poolOfOneDrawsIt() {
+        FlagScheduler scheduler = new FlagScheduler(1);
+        scheduler.enable(new int[]{0});
+        int[] out = {-1};
+        scheduler.sample(new QuizRandom(1), 1, out);
+        assertEquals(0, out[0]);
+
+        scheduler = new FlagScheduler(50);
+        scheduler.enable(new int[]{37});
+        scheduler.recordGuess(37, true);
+        scheduler.sample(new QuizRandom(1), 1, out);
+        assertEquals(37, out[0]);
+        assertDrawsByWeight(scheduler, 50);
+    }
+
+    @Test
+    public void tooLargeSamplesAreRejected() {
+        FlagScheduler scheduler = new FlagScheduler(10);
+        scheduler.enable(new int[]{1, 4, 6});
+        try {
+            scheduler.sample(new QuizRandom(1), 4, new int[10]);
+            fail("Drew more flags than are enabled");
+        } catch (IllegalArgumentException expected) {
+            // count > getEnabledCount()
+        }
+        assertDrawsByWeight(scheduler, 10); // untouched
+    }
+
+    // random boxes, about two thirds of the flags enabled, at least one
+    private static FlagScheduler randomScheduler(Random random, int capacity) {
+        FlagScheduler scheduler = new FlagScheduler(capacity);
+        for (int flagId = 0; flagId < capacity; flagId++) {
+            int box = random.nextInt(FlagScheduler.BOXES);
+            for (int i = 0; i < box; i++)
+                scheduler.recordGuess(flagId, true);
+            scheduler.setEnabled(flagId, flagId == 0 || random.nextInt(3) > 0);
+        }
+        return scheduler;
+    }
+
+    // each target of the total weight draws the flag whose range holds
+    // it, the flags' ranges following each other in flag id order
+    private static void assertDrawsByWeight(FlagScheduler scheduler, int capacity) {
+        int total = totalWeight(scheduler);
+        int[] out = new int[1];
+        int target = 0;
+        for (int flagId = 0; flagId < capacity; flagId++) {
+            int end = target + weight(scheduler, flagId);
+            for (; target < end; target++) {
+                ScriptedRandom scripted = new ScriptedRandom(target);
+                scheduler.sample(scripted, 1, out);
+                assertEquals(flagId, out[0]);
+                assertEquals(total, scripted.bounds[0]);
+            }
+        }
+        assertEquals(total, target);
+    }
+
+    // weight of a flag: none if disabled, else halving with each box from 16
+    private static int weight(FlagScheduler scheduler, int flagId) {
+        return isEnabled(scheduler, flagId) ? 16 >> scheduler.getBox(flagId) : 0;
+    }
+
+    // sample asks for a target below the total weight
+    private static int totalWeight(FlagScheduler scheduler) {
+        if (scheduler.getEnabledCount() == 0)
+            return 0;
+        ScriptedRandom scripted = new ScriptedRandom(0);
+        scheduler.sample(scripted, 1, new int[1]);
+        return scripted.bounds[0];
+    }
+
+    // disabling an enabled flag changes the enabled count
+    private static boolean isEnabled(FlagScheduler scheduler, int flagId) {
+        int enabledCount = scheduler.getEnabledCount();
+        scheduler.setEnabled(flagId, false);
+        boolean enabled = scheduler.getEnabledCount() != enabledCount;
+        scheduler.setEnabled(flagId, enabled);
+        return enabled;
+    }
+
+    /**
+     * Returns the given targets, or random ones, and records the bounds
+     * asked for, which are the total weight left at each draw.
+     */
+    private static final class ScriptedRandom extends Random {
+        private static final long serialVersionUID = 1L;
+        final int[] bounds = new int[64];
+        private final Random random; // null to return target
+        private final int target;
+        private int draws;
+
+        ScriptedRandom(int target) {
+            this.random = null;
+            this.target = target;
+        }
+
+        ScriptedRandom(Random random) {
+            this.random = random;
+            this.target = 0;
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            this.bounds[this.draws++] = bound;
+            int value = this.random != null ? this.random.nextInt(bound) : this.target;
+            assertTrue(value < bound);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+// QuizEngineTest.java
+// Saving and restoring a quiz, and lookalike wrong answers
+package com.hektor7.flagquiz;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuizEngineTest {
+    private static final int CAPACITY = 30;
+    private static final int CHOICES = 6;
+    private static final int FLAGS_IN_QUIZ = 10;
+
+    // each flag's neighbors are the next flag ids, 10 farther each
+    private static final int NEIGHBORS = 8;
+    private static final int NEIGHBOR_DISTANCE = 10;
+
+    @Test
+    public void savedQuizRestoresAtSameQuestion() {
+        QuizEngine engine = newEngine();
+        engine.startQuiz(42);
+        for (int question = 0; question < 3; question++) {
+            guessWrong(engine);
+            engine.guess(engine.getCorrectIndex());
+            engine.nextQuestion();
+        }
+        guessWrong(engine);
+        assertRestores(engine);
+
+        // answered, before the next question
+        engine.guess(engine.getCorrectIndex());
+        assertTrue(engine.isQuestionAnswered());
+        assertRestores(engine);
+    }
+
+    @Test
+    public void truncatedStateIsRejected() {
+        QuizEngine engine = newEngine();
+        engine.startQuiz(7);
+        guessWrong(engine);
+        int[] state = engine.saveQuiz();
+
+        QuizEngine other = newEngine();
+        other.startQuiz(8);
+        int[] otherState = other.saveQuiz();
+        for (int length = 0; length < state.length; length++) {
+            int[] truncated = new int[length];
+            System.arraycopy(state, 0, truncated, 0, length);
+            assertFalse(other.restoreQuiz(truncated));
+            assertArrayEquals(otherState, other.saveQuiz()); // unchanged
+        }
+        assertFalse(other.restoreQuiz(null));
+        assertTrue(other.restoreQuiz(state));
+    }
+
+    @Test
+    public void stateOfOtherSettingsIsRejected() {
+        QuizEngine engine = newEngine();
+        engine.startQuiz(9);
+        int[] state = engine.saveQuiz();
+
+        QuizEngine other = newEngine();
+        other.setChoices(CHOICES + 3);
+        assertFalse(other.restoreQuiz(state)); // other choices
+        other.setChoices(CHOICES);
+        assertTrue(other.restoreQuiz(state));
+
+        other = newEngine();
+        other.removeFlags(new int[]{engine.getQuizFlag(FLAGS_IN_QUIZ - 1)});
+        assertFalse(other.restoreQuiz(state)); // flag of another region
+
+        int[] badQuestion = state.clone();
+        badQuestion[1] = FLAGS_IN_QUIZ; // past the last question
+        assertFalse(newEngine().restoreQuiz(badQuestion));
+
+        int[] badCorrect = state.clone();
+        badCorrect[2] = 2; // more correct guesses than questions
+        assertFalse(newEngine().restoreQuiz(badCorrect));
+
+        int[] badFlag = state.clone();
+        badFlag[badFlag.length - 1] = CAPACITY; // not in the catalog
+        assertFalse(newEngine().restoreQuiz(badFlag));
+    }
+
+    @Test
+    public void lookalikesComeFirst() throws IOException {
+        // 4 lookalikes within 45, the fifth wrong answer drawn uniformly
+        assertLookalikes(CHOICES, 45, new int[0]);
+        // more lookalikes than wrong answers
+        assertLookalikes(3, NEIGHBORS * NEIGHBOR_DISTANCE, new int[0]);
+    }
+
+    @Test
+    public void lookalikesAreInThePool() throws IOException {
+        assertLookalikes(CHOICES, 45, new int[]{1, 2, 5, 11, 12, 13, 20, 29});
+        assertLookalikes(3, NEIGHBORS * NEIGHBOR_DISTANCE, new int[]{3, 4, 5, 6, 7, 8, 9});
+    }
+
+    @Test
+    public void uniformDrawFillsMissingLookalikes() throws IOException {
+        assertLookalikes(CHOICES, 15, new int[0]); // one lookalike
+        assertLookalikes(CHOICES, 5, new int[0]); // none
+        assertLookalikes(QuizEngine.MAX_CHOICES, NEIGHBORS * NEIGHBOR_DISTANCE,
+                new int[]{0, 2, 4, 6, 8, 10});
+    }
+
+    // every question of many quizzes has distinct answers, the current
+    // flag once, and each lookalike of the pool it has room for
+    private static void assertLookalikes(int choices, int maxDistance, int[] removed)
+            throws IOException {
+        boolean[] inPool = new boolean[CAPACITY];
+        Arrays.fill(inPool, true);
+        for (int flagId : removed)
+            inPool[flagId] = false;
+
+        QuizEngine engine = newEngine();
+        engine.removeFlags(removed);
+        engine.setChoices(choices);
+        engine.setDistractorSimilarity(newSimilarity(), maxDistance);
+        for (int seed = 0; seed < 200; seed++) {
+            engine.startQuiz(seed);
+            while (true) {
+                int flagId = engine.getCorrectAnswer();
+                int lookalikes = 0; // of the pool, within maxDistance
+                for (int rank = 1; rank <= NEIGHBORS; rank++) {
+                    if (rank * NEIGHBOR_DISTANCE <= maxDistance
+                            && inPool[(flagId + rank) % CAPACITY])
+                        ++lookalikes;
+                }
+
+                boolean[] seen = new boolean[CAPACITY];
+                int found = 0;
+                for (int i = 0; i < choices; i++) {
+                    int answer = engine.getAnswer(i);
+                    assertTrue(inPool[answer]);
+                    assertFalse(seen[answer]);
+                    seen[answer] = true;
+                    int rank = (answer - flagId + CAPACITY) % CAPACITY;
+                    if (rank > 0 && rank * NEIGHBOR_DISTANCE <= maxDistance)
+                        ++found;
+                }
+                assertEquals(flagId, engine.getAnswer(engine.getCorrectIndex()));
+                assertEquals(Math.min(lookalikes, choices - 1), found);
+
+                engine.guess(engine.getCorrectIndex());
+                if (engine.isQuizOver())
+                    break;
+                engine.nextQuestion();
+            }
+        }
+    }
+
+    // index where flag f has the neighbors f + 1 to f + NEIGHBORS
+    private static FlagSimilarity newSimilarity() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x464C4753); // "FLGS"
+        out.writeInt(1);
+        out.writeInt(CAPACITY);
+        out.writeInt(NEIGHBORS);
+        for (int flagId = 0; flagId < CAPACITY; flagId++) {
+            for (int rank = 1; rank <= NEIGHBORS; rank++) {
+                out.writeShort((flagId + rank) % CAPACITY);
+                out.writeByte(rank * NEIGHBOR_DISTANCE);
+            }
+        }
+        return FlagSimilarity.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    // engine over flags 0 to CAPACITY - 1
+    private static QuizEngine newEngine() {
+        QuizEngine engine = new QuizEngine(CAPACITY, new QuizRandom());
+        int[] flagIds = new int[CAPACITY];
+        for (int flagId = 0; flagId < CAPACITY; flagId++)
+            flagIds[flagId] = flagId;
+        engine.addFlags(flagIds);
+        engine.setChoices(CHOICES);
+        engine.setFlagsInQuiz(FLAGS_IN_QUIZ);
+        return engine;
+    }
+
+    private static void guessWrong(QuizEngine engine) {
+        engine.guess((engine.getCorrectIndex() + 1) % engine.getChoices());
+    }
+
+    // a new engine restores the saved quiz as it was
+    private static void assertRestores(QuizEngine engine) {
+        QuizEngine restored = newEngine();
+        assertTrue(restored.restoreQuiz(engine.saveQuiz()));
+        assertArrayEquals(engine.saveQuiz(), restored.saveQuiz());
+        assertEquals(engine.getFlagsInQuiz(), restored.getFlagsInQuiz());
+        assertEquals(engine.getQuestion(), restored.getQuestion());
+        assertEquals(engine.getCorrectAnswer(), restored.getCorrectAnswer());
+        assertEquals(engine.getCorrectIndex(), restored.getCorrectIndex());
+        assertEquals(engine.getCorrectAnswers(), restored.getCorrectAnswers());
+        assertEquals(engine.getTotalGuesses(), restored.getTotalGuesses());
+        assertEquals(engine.isQuestionAnswered(), restored.isQuestionAnswered());
+        for (int i = 0; i < CHOICES; i++) {
+            assertEquals(engine.getAnswer(i), restored.getAnswer(i));
+            assertEquals(engine.isGuessed(i), restored.isGuessed(i));
+        }
+        for (int question = 0; question < engine.getFlagsInQuiz(); question++)
+            assertEquals(engine.getQuizFlag(question), restored.getQuizFlag(question));
+    }
+}
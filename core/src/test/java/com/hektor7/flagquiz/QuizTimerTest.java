@@ -0,0 +1,42 @@
+// QuizTimerTest.java
+// Questions answered before or after their flag is shown
+package com.hektor7.flagquiz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class QuizTimerTest {
+    private static final long MS = 1000000; // nanoseconds
+
+    @Test
+    public void timesFromFlagShownToCorrectGuess() {
+        QuizTimer timer = new QuizTimer(10);
+        timer.questionChanged();
+        timer.questionShown(100 * MS);
+        timer.questionShown(300 * MS); // shown again, e.g. after a rotation
+        assertEquals(900000, timer.questionAnswered(1000 * MS));
+        assertEquals(-1, timer.questionAnswered(1100 * MS)); // answered already
+        assertEquals(1, timer.getQuestionCount());
+    }
+
+    @Test
+    public void answerBeforeFlagShownIsNotTimed() {
+        QuizTimer timer = new QuizTimer(10);
+        timer.questionChanged();
+        timer.questionShown(0);
+        timer.questionAnswered(500 * MS);
+
+        // answered while its flag was still decoding
+        timer.questionChanged();
+        assertEquals(-1, timer.questionAnswered(600 * MS));
+        timer.questionShown(700 * MS);
+
+        // the next question is timed from its own flag, not the late one
+        timer.questionChanged();
+        timer.questionShown(2000 * MS);
+        assertEquals(400000, timer.questionAnswered(2400 * MS));
+        assertEquals(2, timer.getQuestionCount());
+        assertEquals(900000, timer.getTotalMicros());
+    }
+}
@@ -0,0 +1,99 @@
+// WireFormatTest.java
+// Round trips of the wire format
+package com.hektor7.flagquiz;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class WireFormatTest {
+    private static final int[] INTS = {0, 1, 127, 128, 255, 16383, 16384,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, -1};
+    private static final long[] LONGS = {0, 1, 127, 128, Integer.MAX_VALUE,
+            1L << 35, Long.MAX_VALUE, Long.MIN_VALUE, -1};
+
+    @Test
+    public void varintsRoundTrip() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WireFormat.MAX_VARLONG_SIZE);
+        for (int value : INTS) {
+            buffer.clear();
+            WireFormat.writeVarint(buffer, value);
+            assertEquals(WireFormat.varintSize(value), buffer.position());
+            buffer.flip();
+            assertEquals(value, WireFormat.readVarint(buffer));
+            assertFalse(buffer.hasRemaining());
+        }
+        for (long value : LONGS) {
+            buffer.clear();
+            WireFormat.writeVarlong(buffer, value);
+            buffer.flip();
+            assertEquals(value, WireFormat.readVarlong(buffer));
+            assertEquals(value, WireFormat.unZigZag(WireFormat.zigZag(value)));
+        }
+        assertEquals(1, WireFormat.varintSize((int) WireFormat.zigZag(-64)));
+    }
+
+    @Test
+    public void batchesRoundTrip() throws IOException {
+        Random random = new QuizRandom(7);
+        for (int round = 0; round < 1000; round++) {
+            AnswerEvent[] events = randomEvents(random, random.nextInt(20));
+            ByteBuffer buffer = ByteBuffer.allocate(WireFormat.maxAnswersSize(events.length));
+            WireFormat.writeAnswers(buffer, events, 0, events.length);
+            buffer.flip();
+            assertArrayEquals(events, WireFormat.readAnswers(buffer, events.length));
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    public void malformedInputIsRejected() {
+        // truncated, too long, and more events than allowed
+        assertRejected(new byte[]{(byte) 0x80});
+        assertRejected(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                (byte) 0x80, 1});
+        assertRejected(new byte[]{13});
+        assertRejected(new byte[]{1, 0, 5});
+
+        Random random = new QuizRandom(11);
+        for (int round = 0; round < 1000; round++) {
+            AnswerEvent[] events = randomEvents(random, 1 + random.nextInt(12));
+            ByteBuffer buffer = ByteBuffer.allocate(WireFormat.maxAnswersSize(events.length));
+            WireFormat.writeAnswers(buffer, events, 0, events.length);
+            byte[] bytes = new byte[random.nextInt(buffer.position())];
+            System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+            assertRejected(bytes);
+        }
+    }
+
+    private static AnswerEvent[] randomEvents(Random random, int count) {
+        AnswerEvent[] events = new AnswerEvent[count];
+        int question = random.nextInt(100);
+        long time = random.nextLong() >>> 2;
+        for (int i = 0; i < count; i++) {
+            question += random.nextInt(5) - 1; // mostly forwards
+            long shown = time + random.nextInt(2000000) - 100000;
+            long answered = shown + random.nextInt(30000000);
+            events[i] = new AnswerEvent(Math.max(0, question), random.nextInt() & Integer.MAX_VALUE,
+                    1 + random.nextInt(63), shown, answered);
+            time = answered;
+        }
+        return events;
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            WireFormat.readAnswers(ByteBuffer.wrap(bytes), 12);
+            fail("Accepted a malformed batch");
+        } catch (IOException expected) {
+            // malformed
+        }
+    }
+}
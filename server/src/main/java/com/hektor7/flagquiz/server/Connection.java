@@ -0,0 +1,76 @@
+// Connection.java
+// One player's socket: frames read and frames waiting to be written
+package com.hektor7.flagquiz.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Only the selector thread reads and writes the socket. Sessions queue
+ * frames from their own threads with send(), without locks; the
+ * selector thread is woken up once per batch of queued frames.
+ */
+final class Connection {
+    // frames a slow player may have queued before it is dropped
+    private static final int MAX_QUEUED_FRAMES = 256;
+
+    final SocketChannel channel;
+    final ByteBuffer readBuffer; // bytes read, in write mode
+    volatile QuizSession session; // session joined last, set by the selector thread
+    volatile boolean dropped; // to be closed by the selector thread
+
+    private final QuizServer server;
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger queuedFrames = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(); // in the server's queue
+
+    Connection(QuizServer server, SocketChannel channel) {
+        this.server = server;
+        this.channel = channel;
+        this.readBuffer = ByteBuffer.allocate(4 + Protocol.MAX_PLAYER_FRAME);
+    }
+
+    /**
+     * Queue a frame. Thread-safe.
+     *
+     * @param frame Frame from Protocol.Frame.finish(), not modified
+     */
+    void send(ByteBuffer frame) {
+        if (this.queuedFrames.incrementAndGet() > MAX_QUEUED_FRAMES) {
+            this.server.close(this); // too slow to keep up with the session
+            return;
+        }
+        this.writeQueue.add(frame.duplicate()); // shared by every player
+        if (this.flushScheduled.compareAndSet(false, true)) {
+            this.server.scheduleFlush(this);
+        }
+    }
+
+    /**
+     * Write the queued frames. Selector thread only.
+     *
+     * @return true if every frame was written, false if the socket is full
+     * @throws IOException If the socket fails
+     */
+    boolean flush() throws IOException {
+        while (true) {
+            ByteBuffer frame;
+            while ((frame = this.writeQueue.peek()) != null) {
+                this.channel.write(frame);
+                if (frame.hasRemaining())
+                    return false; // OP_WRITE calls flush again
+                this.writeQueue.poll();
+                this.queuedFrames.decrementAndGet();
+            }
+            this.flushScheduled.set(false);
+            // a frame queued since the loop ended didn't schedule a flush
+            if (this.writeQueue.isEmpty() || !this.flushScheduled.compareAndSet(false, true))
+                return true;
+        }
+    }
+}
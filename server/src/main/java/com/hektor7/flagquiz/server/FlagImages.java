@@ -0,0 +1,94 @@
+// FlagImages.java
+// The image of each flag as the server sends it to the players
+package com.hektor7.flagquiz.server;
+
+import com.hektor7.flagquiz.FlagPack;
+import com.hektor7.flagquiz.FlagVectors;
+import com.hektor7.flagquiz.WireFormat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Players aren't told which flag a question shows, only sent its
+ * image, so the image comes from the server: the PNG from the flag
+ * pack, or the rectangles of a vector flag in the layout of a flag of
+ * flags.vec. Immutable, so every session shares one.
+ */
+final class FlagImages {
+    // image formats
+    static final byte NONE = 0; // the server has no image of the flag
+    static final byte PNG = 1;
+    static final byte VECTOR = 2;
+
+    private final FlagPack pack;
+    private final ByteBuffer[] vectors; // by flag id, null if kept as PNG
+    private final int maxSize; // bytes of the largest image
+
+    /**
+     * @param pack    Flag pack
+     * @param vectors Flag vectors
+     * @param size    Number of flags in the catalog
+     */
+    FlagImages(FlagPack pack, FlagVectors vectors, int size) {
+        this.pack = pack;
+        this.vectors = new ByteBuffer[size];
+        int maxSize = 0;
+        for (int flagId = 0; flagId < size; flagId++) {
+            FlagVectors.VectorFlag vector = vectors.getFlag(flagId);
+            if (vector != null) {
+                this.vectors[flagId] = encode(vector);
+            }
+            maxSize = Math.max(maxSize, this.getImage(flagId).remaining());
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return NONE, PNG or VECTOR
+     */
+    byte getFormat(int flagId) {
+        if (this.vectors[flagId] != null)
+            return VECTOR;
+        return this.pack.hasImage(flagId) ? PNG : NONE;
+    }
+
+    /**
+     * @param flagId Flag id
+     * @return Read-only image in the flag's format, empty for NONE
+     */
+    ByteBuffer getImage(int flagId) {
+        if (this.vectors[flagId] != null)
+            return this.vectors[flagId].duplicate();
+        return this.pack.hasImage(flagId) ? this.pack.getFlag(flagId)
+                : ByteBuffer.allocate(0).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return Bytes of the largest image
+     */
+    int getMaxSize() {
+        return this.maxSize;
+    }
+
+    // width, height and rectangle count, then per rectangle its colors
+    // and position, as FlagVectors reads a flag
+    private static ByteBuffer encode(FlagVectors.VectorFlag vector) {
+        int count = vector.getRectCount();
+        ByteBuffer buffer = ByteBuffer.allocate(
+                WireFormat.MAX_VARINT_SIZE * (3 + 4 * count) + 8 * count);
+        WireFormat.writeVarint(buffer, vector.getWidth());
+        WireFormat.writeVarint(buffer, vector.getHeight());
+        WireFormat.writeVarint(buffer, count);
+        for (int rect = 0; rect < count; rect++) {
+            buffer.putInt(vector.getTopColor(rect));
+            buffer.putInt(vector.getBottomColor(rect));
+            WireFormat.writeVarint(buffer, vector.getLeft(rect));
+            WireFormat.writeVarint(buffer, vector.getTop(rect));
+            WireFormat.writeVarint(buffer, vector.getRectWidth(rect));
+            WireFormat.writeVarint(buffer, vector.getRectHeight(rect));
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,340 @@
+// LoadGenerator.java
+// Plays quiz sessions with thousands of simulated players
+package com.hektor7.flagquiz.server;
+
+import com.hektor7.flagquiz.AnswerEvent;
+import com.hektor7.flagquiz.FlagCatalog;
+import com.hektor7.flagquiz.FlagPack;
+import com.hektor7.flagquiz.FlagVectors;
+import com.hektor7.flagquiz.LatencyHistogram;
+import com.hektor7.flagquiz.QuizRandom;
+import com.hektor7.flagquiz.WireFormat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Connects the players over loopback to a server started in the same
+ * process, or to a running one, all on one selector thread. Players
+ * join sessions of a fixed size; once all joined, each session's first
+ * player starts it. Players tell the flag from its image, looked up in
+ * the same flag pack and vectors as the server's, and answer every
+ * question after a random think time, right most of the time. Reports the answers per second, the
+ * answers per ANSWERS frame and bytes sent per answer as they went
+ * over the socket, and the time from a player's answer to the result
+ * of its question.
+ */
+public final class LoadGenerator {
+    private static final int DEFAULT_PLAYERS = 2000;
+    private static final int DEFAULT_SESSION_SIZE = 25;
+
+    // quiz of each session
+    private static final int CHOICES = 6;
+    private static final int FLAGS_IN_QUIZ = 10;
+    private static final int QUESTION_MILLIS = 5000;
+    private static final int PAUSE_MILLIS = 0;
+
+    private static final int MAX_THINK_MILLIS = 200;
+    private static final double ACCURACY = 0.7; // chance of a right answer
+    private static final long TIMEOUT_NANOS = 120 * 1000000000L;
+
+    private final Selector selector;
+    private final Map<ByteBuffer, Integer> flagIds = new HashMap<ByteBuffer, Integer>(); // by image
+    private final Random random = new QuizRandom();
+    private final List<Player> players = new ArrayList<Player>();
+    private final PriorityQueue<Player> thinking = new PriorityQueue<Player>(); // by answer time
+    private final LatencyHistogram resultLatencies = new LatencyHistogram(64 * 1024); // us
+    private int joined; // JOINED received
+    private int finished; // FINISHED received
+    private long images; // IMAGE received
+    private long imageBytes; // of the IMAGE frames received, with their length
+    private long questions; // QUESTION received
+    private long answers; // answer events sent
+    private long answerFrames; // ANSWERS frames sent
+    private long answerBytes; // of the ANSWERS frames sent, with their length
+    private long errors; // ERROR received
+
+    private LoadGenerator(FlagImages images, int size) throws IOException {
+        this.selector = Selector.open();
+        for (int flagId = 0; flagId < size; flagId++) {
+            if (images.getFormat(flagId) != FlagImages.NONE)
+                this.flagIds.put(images.getImage(flagId), flagId);
+        }
+    }
+
+    /**
+     * @param args Catalog file (flags.idx), optionally the number of
+     *             players, the players per session and host:port of a
+     *             running server
+     * @throws Exception If the catalog can't be read or a socket fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: LoadGenerator <flags.idx> [players]"
+                    + " [players per session] [host:port]");
+            System.exit(1);
+        }
+        int playerCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLAYERS;
+        int sessionSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SESSION_SIZE;
+
+        FlagCatalog catalog = QuizServer.readCatalog(args[0]);
+        FlagPack pack = QuizServer.readPack(args[0]);
+        FlagVectors vectors = QuizServer.readVectors(args[0]);
+        QuizServer server = null;
+        InetSocketAddress address;
+        if (args.length > 3) {
+            String[] hostPort = args[3].split(":");
+            address = new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1]));
+        } else {
+            server = new QuizServer(catalog, pack, vectors,
+                    new InetSocketAddress("127.0.0.1", 0),
+                    Runtime.getRuntime().availableProcessors());
+            server.start();
+            address = new InetSocketAddress("127.0.0.1", server.getPort());
+        }
+
+        LoadGenerator generator = new LoadGenerator(
+                new FlagImages(pack, vectors, catalog.size()), catalog.size());
+        long start = System.nanoTime();
+        boolean done = generator.run(address, playerCount, sessionSize);
+        long elapsed = System.nanoTime() - start;
+        generator.report(elapsed, done);
+
+        if (server != null)
+            server.stop();
+        System.exit(done ? 0 : 1);
+    }
+
+    private boolean run(InetSocketAddress address, int playerCount, int sessionSize)
+            throws IOException {
+        for (int i = 0; i < playerCount; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Player player = new Player(i, i % sessionSize == 0, channel);
+            channel.register(this.selector, SelectionKey.OP_CONNECT, player);
+            channel.connect(address);
+            this.players.add(player);
+        }
+
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (this.finished < playerCount && System.nanoTime() < deadline) {
+            long now = System.nanoTime();
+            Player next;
+            while ((next = this.thinking.peek()) != null && next.answerNanos <= now) {
+                this.thinking.poll();
+                this.answer(next);
+            }
+            long wakeNanos = now + 100 * 1000000L;
+            if ((next = this.thinking.peek()) != null)
+                wakeNanos = Math.min(wakeNanos, next.answerNanos);
+            this.selector.select(Math.max(1, (wakeNanos - now) / 1000000));
+
+            Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Player player = (Player) key.attachment();
+                if (key.isConnectable()) {
+                    player.channel.finishConnect();
+                    key.interestOps(SelectionKey.OP_READ);
+                    player.write(new Protocol.Frame(Protocol.JOIN, 64)
+                            .putString("load-" + player.id / sessionSize)
+                            .putString("player-" + player.id).finish());
+                } else if (key.isReadable()) {
+                    this.read(player);
+                }
+            }
+        }
+
+        for (Player player : this.players)
+            player.channel.close();
+        this.selector.close();
+        return this.finished == playerCount;
+    }
+
+    private void read(Player player) throws IOException {
+        if (player.channel.read(player.readBuffer) < 0)
+            throw new IOException("Server closed player " + player.id);
+        ByteBuffer in = player.readBuffer;
+        in.flip();
+        ByteBuffer frame;
+        while ((frame = Protocol.nextFrame(in, Protocol.MAX_SERVER_FRAME)) != null)
+            this.handle(player, frame);
+        in.compact();
+        player.fitReadBuffer();
+    }
+
+    private void handle(Player player, ByteBuffer frame) throws IOException {
+        switch (frame.get()) {
+            case Protocol.JOINED:
+                if (++this.joined == this.players.size())
+                    this.startSessions();
+                break;
+            case Protocol.IMAGE:
+                ++this.images;
+                this.imageBytes += frame.limit();
+                player.image = WireFormat.readVarint(frame);
+                frame.get(); // format
+                Integer flagId = this.flagIds.get(frame.slice());
+                player.flagId = flagId != null ? flagId : -1;
+                break;
+            case Protocol.QUESTION:
+                ++this.questions;
+                player.shownNanos = System.nanoTime();
+                player.question = WireFormat.readVarint(frame);
+                WireFormat.readVarint(frame); // questions
+                int image = WireFormat.readVarint(frame);
+                int choices = WireFormat.readVarint(frame);
+                player.correctIndex = -1; // a guess, without the image
+                for (int i = 0; i < choices; i++) {
+                    if (WireFormat.readVarint(frame) == player.flagId && image == player.image)
+                        player.correctIndex = i;
+                }
+                player.image = image;
+                player.choices = choices;
+                player.answerNanos = player.shownNanos
+                        + this.random.nextInt(MAX_THINK_MILLIS + 1) * 1000000L;
+                this.thinking.add(player);
+                break;
+            case Protocol.RESULT:
+                if (player.answerSentNanos != 0) {
+                    this.resultLatencies.record((System.nanoTime() - player.answerSentNanos) / 1000);
+                    player.answerSentNanos = 0;
+                }
+                break;
+            case Protocol.FINISHED:
+                ++this.finished;
+                break;
+            case Protocol.ERROR:
+                ++this.errors;
+                System.err.println("Player " + player.id + ": " + Protocol.getString(frame));
+                break;
+            default:
+                throw new IOException("Unknown message");
+        }
+    }
+
+    private void startSessions() throws IOException {
+        for (Player player : this.players) {
+            if (player.host) {
+                player.write(new Protocol.Frame(Protocol.START, 16).putInt(CHOICES)
+                        .putInt(FLAGS_IN_QUIZ).putInt(QUESTION_MILLIS)
+                        .putInt(PAUSE_MILLIS).finish());
+            }
+        }
+    }
+
+    private void answer(Player player) throws IOException {
+        int answerIndex;
+        if (player.correctIndex < 0) {
+            answerIndex = this.random.nextInt(player.choices);
+        } else {
+            answerIndex = this.random.nextDouble() < ACCURACY ? player.correctIndex
+                    : (player.correctIndex + 1 + this.random.nextInt(player.choices - 1))
+                    % player.choices;
+        }
+        long nowMicros = System.nanoTime() / 1000;
+        player.answerSentNanos = nowMicros * 1000;
+        player.events[0] = new AnswerEvent(player.question, player.image, 1 << answerIndex,
+                player.shownNanos / 1000, nowMicros);
+        this.sendAnswers(player, player.events, 1);
+    }
+
+    // one ANSWERS frame, counted as it goes over the socket
+    private void sendAnswers(Player player, AnswerEvent[] events, int count)
+            throws IOException {
+        Protocol.Frame frame = new Protocol.Frame(Protocol.ANSWERS,
+                WireFormat.maxAnswersSize(count));
+        frame.putAnswers(events, count);
+        ByteBuffer buffer = frame.finish();
+        ++this.answerFrames;
+        this.answers += count;
+        this.answerBytes += buffer.remaining();
+        player.write(buffer);
+    }
+
+    private void report(long elapsedNanos, boolean done) {
+        System.out.println(String.format(Locale.US,
+                "%d players, %d finished%s in %d ms, %d errors",
+                this.players.size(), this.finished, done ? "" : " (timed out)",
+                elapsedNanos / 1000000, this.errors));
+        System.out.println(String.format(Locale.US,
+                "%d questions received, %d answers sent: %.0f answers/s",
+                this.questions, this.answers, this.answers * 1e9 / elapsedNanos));
+        System.out.println(String.format(Locale.US,
+                "%d IMAGE frames: %.1f KB/image",
+                this.images, this.images == 0 ? 0.0 : this.imageBytes / 1024.0 / this.images));
+        System.out.println(String.format(Locale.US,
+                "%d ANSWERS frames: %.2f answers/frame, %.1f bytes/answer",
+                this.answerFrames,
+                this.answerFrames == 0 ? 0.0 : (double) this.answers / this.answerFrames,
+                this.answers == 0 ? 0.0 : (double) this.answerBytes / this.answers));
+        System.out.println("Answer to result (us): " + this.resultLatencies);
+    }
+
+    /**
+     * A simulated player; frames are small, so a write never blocks
+     * for long and is finished in place.
+     */
+    private static final class Player implements Comparable<Player> {
+        // fits every frame but the larger images
+        private static final int READ_BUFFER_SIZE = 4 + 16 * 1024;
+
+        final int id;
+        final boolean host; // starts its session
+        final SocketChannel channel;
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE); // in write mode
+        final AnswerEvent[] events = new AnswerEvent[1]; // of the next ANSWERS frame
+        int question; // open question
+        int image; // of the open question, or of the next one once its IMAGE arrived
+        int flagId = -1; // shown by the last IMAGE, -1 if not recognized
+        int correctIndex; // of the open question, -1 if not recognized
+        int choices;
+        long shownNanos; // when the open question arrived
+        long answerNanos; // when it answers the open question
+        long answerSentNanos; // 0 once its result arrived
+
+        Player(int id, boolean host, SocketChannel channel) {
+            this.id = id;
+            this.host = host;
+            this.channel = channel;
+        }
+
+        // grow the buffer to fit the frame being read, e.g. a large
+        // image, and shrink it back once the frame is read
+        void fitReadBuffer() {
+            ByteBuffer in = this.readBuffer;
+            int frameSize = in.position() >= 4
+                    ? 4 + Math.min(in.getInt(0), Protocol.MAX_SERVER_FRAME) : 0;
+            int capacity = Math.max(READ_BUFFER_SIZE, Math.max(frameSize, in.position()));
+            if (capacity != in.capacity()) {
+                in.flip();
+                this.readBuffer = ByteBuffer.allocate(capacity).put(in);
+            }
+        }
+
+        void write(ByteBuffer frame) throws IOException {
+            while (frame.hasRemaining())
+                this.channel.write(frame);
+        }
+
+        @Override
+        public int compareTo(Player other) {
+            return this.answerNanos < other.answerNanos ? -1
+                    : this.answerNanos == other.answerNanos ? 0 : 1;
+        }
+    }
+}
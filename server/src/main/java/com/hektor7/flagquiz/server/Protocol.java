@@ -0,0 +1,183 @@
+// Protocol.java
+// Messages between the quiz server and its players, and their frames
+package com.hektor7.flagquiz.server;
+
+import com.hektor7.flagquiz.AnswerEvent;
+import com.hektor7.flagquiz.WireFormat;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Every message is a frame: its length as an int, then its type byte
+ * and its fields. Fields sent once per session are big-endian ints,
+ * the ones sent every question are WireFormat varints (v below), and
+ * strings are UTF-8 with a short length.
+ *
+ * Player to server:
+ * JOIN session, name; START choices, flags, question ms, pause ms;
+ * ANSWERS a WireFormat answer list of up to MAX_ANSWERS events; a
+ * player has one answer per question, sent as soon as it is chosen.
+ * A JOIN to another session leaves the one joined before.
+ *
+ * Server to player:
+ * JOINED player id, players; IMAGE v image, format byte, then the
+ * FlagImages image to the end of the frame; QUESTION v question, v
+ * questions, v image, v choices, v flag id of each answer; RESULT v
+ * question, correct index byte, v count, then (v player id, v answer
+ * mask or 0, v latency us) fastest correct first; FINISHED then
+ * (player id, score, total latency us, name) best first; ERROR message.
+ *
+ * The flag of a question is never named: image is a random reference
+ * to the IMAGE frame sent just before the QUESTION, and answers carry
+ * it as their AnswerEvent imageRef.
+ */
+final class Protocol {
+    // longest frames, without the length
+    static final int MAX_PLAYER_FRAME = 512;
+    static final int MAX_SERVER_FRAME = 256 * 1024; // fits the largest IMAGE
+
+    // most events in an ANSWERS frame, which must fit MAX_PLAYER_FRAME
+    static final int MAX_ANSWERS = 12;
+
+    // player to server
+    static final byte JOIN = 1;
+    static final byte START = 2;
+    static final byte ANSWERS = 3;
+
+    // server to player
+    static final byte JOINED = 10;
+    static final byte QUESTION = 11;
+    static final byte RESULT = 12;
+    static final byte FINISHED = 13;
+    static final byte ERROR = 14;
+    static final byte IMAGE = 15;
+
+    private static final String CHARSET = "UTF-8";
+
+    private Protocol() {
+    }
+
+    /**
+     * Take the next whole frame out of the bytes received.
+     *
+     * @param in        Bytes received, in read mode; moved past the frame
+     * @param maxLength Longest frame accepted
+     * @return Frame positioned at its type, or null until it is whole
+     * @throws IOException If the frame is too long
+     */
+    static ByteBuffer nextFrame(ByteBuffer in, int maxLength) throws IOException {
+        if (in.remaining() < 4)
+            return null;
+        int length = in.getInt(in.position());
+        if (length < 1 || length > maxLength)
+            throw new IOException("Bad frame length " + length);
+        if (in.remaining() < 4 + length)
+            return null;
+
+        ByteBuffer frame = in.slice();
+        frame.limit(4 + length);
+        frame.position(4);
+        in.position(in.position() + 4 + length);
+        return frame;
+    }
+
+    /**
+     * @param string String
+     * @return Bytes putString writes for it
+     */
+    static int sizeOf(String string) {
+        return 2 + encode(string).length;
+    }
+
+    /**
+     * @param buffer Frame positioned at a string
+     * @return The string
+     * @throws IOException If it runs past the frame
+     */
+    static String getString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining())
+            throw new IOException("Bad string length " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    private static byte[] encode(String string) {
+        try {
+            return string.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException exception) {
+            throw new AssertionError(exception); // every JVM has UTF-8
+        }
+    }
+
+    /**
+     * Builds one frame. Its capacity must fit the fields.
+     */
+    static final class Frame {
+        private final ByteBuffer buffer;
+
+        /**
+         * @param type     Message type
+         * @param capacity Bytes of the fields
+         */
+        Frame(byte type, int capacity) {
+            this.buffer = ByteBuffer.allocate(5 + capacity);
+            this.buffer.putInt(0); // length, set by finish
+            this.buffer.put(type);
+        }
+
+        Frame putByte(int value) {
+            this.buffer.put((byte) value);
+            return this;
+        }
+
+        Frame putShort(int value) {
+            this.buffer.putShort((short) value);
+            return this;
+        }
+
+        Frame putInt(int value) {
+            this.buffer.putInt(value);
+            return this;
+        }
+
+        Frame putLong(long value) {
+            this.buffer.putLong(value);
+            return this;
+        }
+
+        Frame putVarint(int value) {
+            WireFormat.writeVarint(this.buffer, value);
+            return this;
+        }
+
+        Frame putAnswers(AnswerEvent[] events, int count) {
+            WireFormat.writeAnswers(this.buffer, events, 0, count);
+            return this;
+        }
+
+        Frame putBytes(ByteBuffer value) {
+            this.buffer.put(value.duplicate());
+            return this;
+        }
+
+        Frame putString(String value) {
+            byte[] bytes = encode(value);
+            this.buffer.putShort((short) bytes.length);
+            this.buffer.put(bytes);
+            return this;
+        }
+
+        /**
+         * @return The frame, ready to write; send duplicates of it
+         */
+        ByteBuffer finish() {
+            this.buffer.putInt(0, this.buffer.position() - 4);
+            this.buffer.flip();
+            return this.buffer;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+// QuizServer.java
+// Hosts many quiz sessions over TCP on a fixed pool of threads
+package com.hektor7.flagquiz.server;
+
+import com.hektor7.flagquiz.AnswerEvent;
+import com.hektor7.flagquiz.FlagCatalog;
+import com.hektor7.flagquiz.FlagPack;
+import com.hektor7.flagquiz.FlagVectors;
+import com.hektor7.flagquiz.WireFormat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One selector thread does all the socket I/O; sessions run on a fixed
+ * number of single-threaded stripes, chosen by session name, so a
+ * session's state is only touched by one thread and sessions on
+ * different stripes run in parallel. Embeddable: construct, start()
+ * and stop(), e.g. on a loopback port for tests. See Protocol.
+ */
+public final class QuizServer {
+    public static final int DEFAULT_PORT = 7707;
+
+    private static final Logger LOG = Logger.getLogger(QuizServer.class.getName());
+
+    private final FlagCatalog catalog;
+    private final FlagImages images; // sent to the players instead of flag ids
+    private final int[] flagIds; // every flag of the catalog
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ScheduledExecutorService[] stripes;
+    private final ConcurrentMap<String, QuizSession> sessions =
+            new ConcurrentHashMap<String, QuizSession>();
+    private final Queue<Connection> pendingFlushes = new ConcurrentLinkedQueue<Connection>();
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * Bind the server; it accepts players once started.
+     *
+     * @param catalog Flag catalog the quizzes draw from
+     * @param pack    Flag pack, for the images of the questions
+     * @param vectors Flag vectors, for the images of the vector flags
+     * @param address Address to listen on, port 0 for any free port
+     * @param workers Number of stripes running the sessions
+     * @throws IOException If the address can't be bound or an image
+     *                     doesn't fit a frame
+     */
+    public QuizServer(FlagCatalog catalog, FlagPack pack, FlagVectors vectors,
+                      InetSocketAddress address, int workers) throws IOException {
+        this.catalog = catalog;
+        this.images = new FlagImages(pack, vectors, catalog.size());
+        // type, reference and format, then the image
+        if (2 + WireFormat.MAX_VARINT_SIZE + this.images.getMaxSize() > Protocol.MAX_SERVER_FRAME)
+            throw new IOException("Flag image too large for a frame");
+        this.flagIds = new int[catalog.size()];
+        for (int flagId = 0; flagId < this.flagIds.length; flagId++)
+            this.flagIds[flagId] = flagId;
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.socket().setReuseAddress(true);
+        this.serverChannel.socket().bind(address, 1024);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+
+        this.stripes = new ScheduledExecutorService[workers];
+        for (int i = 0; i < workers; i++)
+            this.stripes[i] = Executors.newSingleThreadScheduledExecutor(
+                    daemonThreads("QuizSession-" + i));
+    }
+
+    /**
+     * @return Port the server listens on
+     */
+    public int getPort() {
+        return this.serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Start accepting players on a new thread.
+     */
+    public synchronized void start() {
+        this.running = true;
+        this.selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runSelector();
+            }
+        }, "QuizServer selector");
+        this.selectorThread.start();
+    }
+
+    /**
+     * Close every connection and stop the threads.
+     *
+     * @throws InterruptedException If interrupted while waiting for them
+     */
+    public synchronized void stop() throws InterruptedException {
+        this.running = false;
+        this.selector.wakeup();
+        if (this.selectorThread != null)
+            this.selectorThread.join();
+        for (ScheduledExecutorService stripe : this.stripes)
+            stripe.shutdownNow();
+    }
+
+    /**
+     * @return Sessions not over yet
+     */
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    // called by a session on its stripe
+    void sessionEnded(String name, QuizSession session) {
+        this.sessions.remove(name, session);
+    }
+
+    // called by Connection.send on any thread
+    void scheduleFlush(Connection connection) {
+        this.pendingFlushes.add(connection);
+        this.selector.wakeup();
+    }
+
+    // called on any thread; the socket is closed by the selector thread
+    void close(Connection connection) {
+        connection.dropped = true;
+        this.scheduleFlush(connection); // the flush closes it
+    }
+
+    private void runSelector() {
+        try {
+            while (this.running) {
+                this.selector.select();
+                Connection connection;
+                while ((connection = this.pendingFlushes.poll()) != null)
+                    this.flush(connection);
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        this.accept();
+                    } else {
+                        connection = (Connection) key.attachment();
+                        if (key.isReadable())
+                            this.read(connection);
+                        if (key.isValid() && key.isWritable())
+                            this.flush(connection);
+                    }
+                }
+            }
+        } catch (IOException exception) {
+            LOG.log(Level.SEVERE, "Selector failed", exception);
+        } finally {
+            for (SelectionKey key : this.selector.keys()) {
+                if (key.attachment() instanceof Connection)
+                    this.closeNow((Connection) key.attachment());
+            }
+            try {
+                this.serverChannel.close();
+                this.selector.close();
+            } catch (IOException ignored) {
+                // shutting down anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = this.serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true); // questions are small and urgent
+            Connection connection = new Connection(this, channel);
+            channel.register(this.selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private void read(Connection connection) {
+        try {
+            if (connection.channel.read(connection.readBuffer) < 0) {
+                this.closeNow(connection);
+                return;
+            }
+            long receivedNanos = System.nanoTime();
+            ByteBuffer in = connection.readBuffer;
+            in.flip();
+            ByteBuffer frame;
+            while ((frame = Protocol.nextFrame(in, Protocol.MAX_PLAYER_FRAME)) != null)
+                this.dispatch(connection, frame, receivedNanos);
+            in.compact();
+        } catch (IOException exception) {
+            this.closeNow(connection); // also a malformed frame
+        } catch (RuntimeException exception) {
+            this.closeNow(connection); // e.g. a frame shorter than its fields
+        }
+    }
+
+    private void dispatch(Connection connection, ByteBuffer frame, long receivedNanos)
+            throws IOException {
+        byte type = frame.get();
+        QuizSession session = connection.session;
+        switch (type) {
+            case Protocol.JOIN:
+                String name = Protocol.getString(frame);
+                String playerName = Protocol.getString(frame);
+                QuizSession previous = session;
+                session = this.sessions.get(name);
+                if (session == null) {
+                    QuizSession created = new QuizSession(name, this,
+                            this.stripes[(name.hashCode() & 0x7FFFFFFF) % this.stripes.length],
+                            this.flagIds, this.catalog.size(), this.images);
+                    session = this.sessions.putIfAbsent(name, created);
+                    if (session == null)
+                        session = created;
+                }
+                if (previous != null && previous != session) {
+                    // else the old session keeps waiting for this player
+                    previous.leave(connection);
+                }
+                connection.session = session;
+                session.join(connection, playerName);
+                break;
+            case Protocol.START:
+                if (session == null) {
+                    QuizSession.sendError(connection, "Join a session first");
+                } else {
+                    session.start(connection, frame.getInt(), frame.getInt(),
+                            frame.getInt(), frame.getInt());
+                }
+                break;
+            case Protocol.ANSWERS:
+                AnswerEvent[] events = WireFormat.readAnswers(frame, Protocol.MAX_ANSWERS);
+                if (session != null)
+                    session.answer(connection, events, receivedNanos);
+                break;
+            default:
+                throw new IOException("Unknown message " + type);
+        }
+    }
+
+    private void flush(Connection connection) {
+        SelectionKey key = connection.channel.keyFor(this.selector);
+        if (key == null || !key.isValid())
+            return; // closed
+        if (connection.dropped) {
+            this.closeNow(connection);
+            return;
+        }
+        try {
+            boolean done = connection.flush();
+            key.interestOps(done ? SelectionKey.OP_READ
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException exception) {
+            this.closeNow(connection);
+        }
+    }
+
+    private void closeNow(Connection connection) {
+        if (!connection.channel.isOpen())
+            return;
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+            // closed anyway
+        }
+        QuizSession session = connection.session;
+        if (session != null)
+            session.leave(connection);
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * @param args Catalog file (flags.idx), next to the flag pack and
+     *             vectors, optionally the port and the number of worker
+     *             threads
+     * @throws IOException If the catalog can't be read or the port bound
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: QuizServer <flags.idx> [port] [workers]");
+            System.exit(1);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        int workers = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        QuizServer server = new QuizServer(readCatalog(args[0]), readPack(args[0]),
+                readVectors(args[0]), new InetSocketAddress(port), workers);
+        server.start();
+        LOG.info("Listening on port " + server.getPort() + " with " + workers + " workers");
+    }
+
+    static FlagCatalog readCatalog(String path) throws IOException {
+        InputStream in = new FileInputStream(path);
+        try {
+            return FlagCatalog.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // the build writes the pack next to the catalog; without it the
+    // questions have no image
+    static FlagPack readPack(String catalogPath) throws IOException {
+        File packFile = new File(new File(catalogPath).getAbsoluteFile().getParentFile(),
+                FlagPack.PACK_FILE);
+        if (!packFile.isFile())
+            return FlagPack.empty();
+        RandomAccessFile file = new RandomAccessFile(packFile, "r");
+        try {
+            return FlagPack.read(file.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, file.length()));
+        } finally {
+            file.close(); // the mapping stays valid
+        }
+    }
+
+    static FlagVectors readVectors(String catalogPath) throws IOException {
+        File vectorFile = new File(new File(catalogPath).getAbsoluteFile().getParentFile(),
+                FlagVectors.VECTOR_FILE);
+        if (!vectorFile.isFile())
+            return FlagVectors.empty();
+        InputStream in = new FileInputStream(vectorFile);
+        try {
+            return FlagVectors.read(in);
+        } finally {
+            in.close();
+        }
+    }
+}
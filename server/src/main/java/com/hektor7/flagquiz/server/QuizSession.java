@@ -0,0 +1,382 @@
+// QuizSession.java
+// One quiz played by many players at the same time
+package com.hektor7.flagquiz.server;
+
+import com.hektor7.flagquiz.AnswerEvent;
+import com.hektor7.flagquiz.QuizEngine;
+import com.hektor7.flagquiz.QuizRandom;
+import com.hektor7.flagquiz.WireFormat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Every player gets the same questions, drawn by a QuizEngine as in
+ * the app, shown as an image under a random reference so that the
+ * answers name no flag. Each question is closed when every player answered or its
+ * time is up, and the answers are ranked: correct ones first, fastest
+ * first. Latencies are the time the server saw pass between sending
+ * the question and reading the answer; the reaction time a player
+ * reports can't be checked, so it is never ranked. The state is
+ * confined to the session's stripe, a
+ * single-threaded executor shared with other sessions, so it needs no
+ * locks; the public methods only queue work on the stripe.
+ */
+final class QuizSession {
+    static final int MAX_PLAYERS = 256;
+
+    private static final Logger LOG = Logger.getLogger(QuizSession.class.getName());
+
+    private static final int WAITING = 0; // players join until START
+    private static final int ASKING = 1; // a question is open
+    private static final int PAUSED = 2; // between questions
+    private static final int OVER = 3;
+
+    private final String name;
+    private final QuizServer server;
+    private final ScheduledExecutorService stripe; // runs all of the session's work
+    private final QuizEngine engine;
+    private final FlagImages images;
+    private final Random imageRandom = new QuizRandom(); // unrelated to the quiz's seed
+
+    private final List<Connection> players = new ArrayList<Connection>(); // by player id, null once gone
+    private final List<String> playerNames = new ArrayList<String>();
+    private final Map<Connection, Integer> playerIds = new HashMap<Connection, Integer>();
+    private int activePlayers; // players still connected
+    private int state = WAITING;
+
+    private final int[] answerMasks = new int[MAX_PLAYERS]; // of the open question, 0 for none
+    private final long[] latencies = new long[MAX_PLAYERS]; // us, of the open question
+    private final int[] scores = new int[MAX_PLAYERS]; // correct answers
+    private final long[] totalLatencies = new long[MAX_PLAYERS]; // us, of the correct answers
+    private int image; // reference to the image of the open question
+    private int answered; // active players who answered the open question
+    private long questionSentNanos; // when the open question was broadcast
+    private int questionMillis; // time to answer a question
+    private int pauseMillis; // time between a result and the next question
+    private ScheduledFuture<?> timeout; // closes the open question or starts the next one
+
+    /**
+     * @param name        Session name players join
+     * @param server      Server, told when the session ends
+     * @param stripe      Executor running the session
+     * @param flagIds     Flags the quiz draws from
+     * @param catalogSize Number of flags in the catalog
+     * @param images      Images of the flags, sent with the questions
+     */
+    QuizSession(String name, QuizServer server, ScheduledExecutorService stripe,
+                int[] flagIds, int catalogSize, FlagImages images) {
+        this.name = name;
+        this.server = server;
+        this.stripe = stripe;
+        this.images = images;
+        this.engine = new QuizEngine(catalogSize, new QuizRandom());
+        this.engine.addFlags(flagIds);
+    }
+
+    /**
+     * Add a player, if the quiz hasn't started.
+     *
+     * @param connection Player
+     * @param playerName Name shown in the final ranking
+     */
+    void join(final Connection connection, final String playerName) {
+        this.stripe.execute(new Runnable() {
+            @Override
+            public void run() {
+                doJoin(connection, playerName);
+            }
+        });
+    }
+
+    /**
+     * Start the quiz; any player may.
+     */
+    void start(final Connection connection, final int choices, final int flagsInQuiz,
+               final int questionMillis, final int pauseMillis) {
+        this.stripe.execute(new Runnable() {
+            @Override
+            public void run() {
+                doStart(connection, choices, flagsInQuiz, questionMillis, pauseMillis);
+            }
+        });
+    }
+
+    /**
+     * Answer the open question; events for other questions are ignored.
+     *
+     * @param events        Events of one ANSWERS frame
+     * @param receivedNanos When the frame was read, so that queueing on
+     *                      the stripe doesn't count against the player
+     */
+    void answer(final Connection connection, final AnswerEvent[] events,
+                final long receivedNanos) {
+        this.stripe.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (AnswerEvent event : events)
+                    doAnswer(connection, event, receivedNanos);
+            }
+        });
+    }
+
+    /**
+     * Remove a player whose connection closed.
+     */
+    void leave(final Connection connection) {
+        this.stripe.execute(new Runnable() {
+            @Override
+            public void run() {
+                doLeave(connection);
+            }
+        });
+    }
+
+    private void doJoin(Connection connection, String playerName) {
+        if (this.state != WAITING) {
+            sendError(connection, "Session " + this.name + " already started");
+            return;
+        }
+        if (this.playerIds.containsKey(connection)) {
+            return;
+        }
+        // reuse the id of a player who left, the quiz hasn't used it yet
+        int playerId = this.players.indexOf(null);
+        if (playerId >= 0) {
+            this.players.set(playerId, connection);
+            this.playerNames.set(playerId, playerName);
+        } else if (this.players.size() < MAX_PLAYERS) {
+            playerId = this.players.size();
+            this.players.add(connection);
+            this.playerNames.add(playerName);
+        } else {
+            sendError(connection, "Session " + this.name + " is full");
+            return;
+        }
+        this.playerIds.put(connection, playerId);
+        ++this.activePlayers;
+        connection.send(new Protocol.Frame(Protocol.JOINED, 8)
+                .putInt(playerId).putInt(this.activePlayers).finish());
+    }
+
+    private void doStart(Connection connection, int choices, int flagsInQuiz,
+                         int questionMillis, int pauseMillis) {
+        if (this.state != WAITING || !this.playerIds.containsKey(connection)) {
+            sendError(connection, "Can't start session " + this.name);
+            return;
+        }
+        if (choices < 2 || choices > QuizEngine.MAX_CHOICES
+                || choices > this.engine.getAvailableFlags()
+                || flagsInQuiz < 0 || questionMillis < 1 || pauseMillis < 0) {
+            sendError(connection, "Bad quiz settings");
+            return;
+        }
+        this.questionMillis = questionMillis;
+        this.pauseMillis = pauseMillis;
+        this.engine.setChoices(choices);
+        this.engine.setFlagsInQuiz(flagsInQuiz);
+
+        long seed = new QuizRandom().nextLong();
+        LOG.info("Session " + this.name + ": " + this.activePlayers
+                + " players, seed " + seed);
+        this.engine.startQuiz(seed); // same selection as the app
+        this.askQuestion();
+    }
+
+    private void askQuestion() {
+        this.state = ASKING;
+        Arrays.fill(this.answerMasks, 0);
+        this.answered = 0;
+
+        // the flag id would tell which answer is right without looking
+        int flagId = this.engine.getCorrectAnswer();
+        this.image = this.imageRandom.nextInt() & Integer.MAX_VALUE;
+        ByteBuffer image = this.images.getImage(flagId);
+        this.broadcast(new Protocol.Frame(Protocol.IMAGE,
+                WireFormat.MAX_VARINT_SIZE + 1 + image.remaining())
+                .putVarint(this.image)
+                .putByte(this.images.getFormat(flagId))
+                .putBytes(image).finish());
+
+        int choices = this.engine.getChoices();
+        Protocol.Frame frame = new Protocol.Frame(Protocol.QUESTION,
+                WireFormat.MAX_VARINT_SIZE * (4 + choices))
+                .putVarint(this.engine.getQuestion())
+                .putVarint(this.engine.getFlagsInQuiz())
+                .putVarint(this.image)
+                .putVarint(choices);
+        for (int i = 0; i < choices; i++)
+            frame.putVarint(this.engine.getAnswer(i));
+        this.broadcast(frame.finish());
+        this.questionSentNanos = System.nanoTime();
+
+        final int question = this.engine.getQuestion();
+        this.timeout = this.stripe.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (state == ASKING && engine.getQuestion() == question)
+                    closeQuestion(); // time is up
+            }
+        }, this.questionMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void doAnswer(Connection connection, AnswerEvent event, long receivedNanos) {
+        Integer playerId = this.playerIds.get(connection);
+        if (this.state != ASKING || playerId == null
+                || event.question != this.engine.getQuestion()
+                || event.imageRef != this.image
+                || event.answerMask == 0
+                || (event.answerMask >>> this.engine.getChoices()) != 0
+                || this.answerMasks[playerId] != 0) {
+            return; // late, repeated, malformed or not a player
+        }
+        this.answerMasks[playerId] = event.answerMask;
+        this.latencies[playerId] = Math.max(0, receivedNanos - this.questionSentNanos) / 1000;
+        if (++this.answered == this.activePlayers) {
+            this.closeQuestion();
+        }
+    }
+
+    private void closeQuestion() {
+        this.timeout.cancel(false);
+        final int correctIndex = this.engine.getCorrectIndex();
+        final int correctMask = 1 << correctIndex;
+
+        // correct answers first, fastest first, then wrong ones, then none
+        Integer[] ranking = this.activePlayerIds();
+        Arrays.sort(ranking, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int rankA = answerRank(a, correctMask);
+                int rankB = answerRank(b, correctMask);
+                if (rankA != rankB)
+                    return rankA - rankB;
+                return latencies[a] < latencies[b] ? -1 : latencies[a] == latencies[b] ? 0 : 1;
+            }
+        });
+
+        Protocol.Frame frame = new Protocol.Frame(Protocol.RESULT,
+                1 + WireFormat.MAX_VARINT_SIZE * (2 + 3 * ranking.length))
+                .putVarint(this.engine.getQuestion())
+                .putByte(correctIndex)
+                .putVarint(ranking.length);
+        for (int playerId : ranking) {
+            int answerMask = this.answerMasks[playerId];
+            if (answerMask == correctMask) {
+                ++this.scores[playerId];
+                this.totalLatencies[playerId] += this.latencies[playerId];
+            }
+            frame.putVarint(playerId)
+                    .putVarint(answerMask)
+                    .putVarint(answerMask != 0 ? (int) Math.min(this.latencies[playerId], Integer.MAX_VALUE) : 0);
+        }
+        this.broadcast(frame.finish());
+
+        this.engine.guess(correctIndex); // closes the question in the engine
+        if (this.engine.isQuizOver()) {
+            this.finish();
+            return;
+        }
+        this.state = PAUSED;
+        this.timeout = this.stripe.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (state == PAUSED) {
+                    engine.nextQuestion();
+                    askQuestion();
+                }
+            }
+        }, this.pauseMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 0 for only the correct answer, 1 for any other, 2 for none
+    private int answerRank(int playerId, int correctMask) {
+        int answerMask = this.answerMasks[playerId];
+        return answerMask == correctMask ? 0 : answerMask == 0 ? 2 : 1;
+    }
+
+    private void finish() {
+        // most correct answers first, then least time spent on them
+        Integer[] ranking = this.activePlayerIds();
+        Arrays.sort(ranking, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (scores[a] != scores[b])
+                    return scores[b] - scores[a];
+                return totalLatencies[a] < totalLatencies[b] ? -1
+                        : totalLatencies[a] == totalLatencies[b] ? 0 : 1;
+            }
+        });
+
+        int capacity = 2;
+        for (int playerId : ranking)
+            capacity += 14 + Protocol.sizeOf(this.playerNames.get(playerId));
+        Protocol.Frame frame = new Protocol.Frame(Protocol.FINISHED, capacity)
+                .putShort(ranking.length);
+        for (int playerId : ranking) {
+            frame.putInt(playerId)
+                    .putShort(this.scores[playerId])
+                    .putLong(this.totalLatencies[playerId])
+                    .putString(this.playerNames.get(playerId));
+        }
+        this.broadcast(frame.finish());
+        this.end();
+    }
+
+    private void doLeave(Connection connection) {
+        Integer playerId = this.playerIds.remove(connection);
+        if (playerId == null) {
+            return;
+        }
+        this.players.set(playerId, null);
+        --this.activePlayers;
+        if (this.activePlayers == 0) {
+            if (this.timeout != null)
+                this.timeout.cancel(false);
+            this.end();
+        } else if (this.state == ASKING) {
+            if (this.answerMasks[playerId] != 0)
+                --this.answered;
+            if (this.answered == this.activePlayers)
+                this.closeQuestion(); // was waiting only for this player
+        }
+    }
+
+    private void end() {
+        this.state = OVER;
+        this.server.sessionEnded(this.name, this);
+    }
+
+    private Integer[] activePlayerIds() {
+        Integer[] playerIds = new Integer[this.activePlayers];
+        int count = 0;
+        for (int playerId = 0; playerId < this.players.size(); playerId++) {
+            if (this.players.get(playerId) != null)
+                playerIds[count++] = playerId;
+        }
+        return playerIds;
+    }
+
+    // the frame is encoded once and shared by every player
+    private void broadcast(ByteBuffer frame) {
+        for (Connection player : this.players) {
+            if (player != null)
+                player.send(frame);
+        }
+    }
+
+    static void sendError(Connection connection, String message) {
+        connection.send(new Protocol.Frame(Protocol.ERROR, Protocol.sizeOf(message))
+                .putString(message).finish());
+    }
+}